@@ -0,0 +1,211 @@
+import edu.uchicago.zhao.sim.BallStore;
+import edu.uchicago.zhao.sim.Snapshot;
+import javafx.scene.Node;
+import javafx.scene.effect.BoxBlur;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.paint.Color;
+
+import static java.lang.Math.sqrt;
+import static javafx.scene.paint.Color.*;
+
+/**
+ * SOURCE: https://gist.github.com/james-d/8327842#file-animationtimertest-java
+ * <p>
+ * The Ball class represents a single bouncing ball. It has several properties including velocities in the horizontal
+ * and vertical directions. A speed property that measures how fast the ball travels. A mass which represents how heavy
+ * a ball is. A radius which measures the distance from the center of a ball to its edge. Lastly, an ImageView which
+ * represents the visualization of the ball object in the JavaFx environment.
+ * Various properties such as velocity, speed, mass, and radius play a part in determining how a ball reacts when it
+ * collides with another ball.
+ * <p>
+ * The physical properties themselves are kept in a BallStore so that the physics can work on packed arrays.
+ * A Ball is a handle holding the index of its state in the store, along with the view that draws it.
+ * <p>
+ * The view shows a pre-rendered sprite of the ball from a SpriteCache shared by every ball, so a blurred ball is drawn
+ * with the same image copy as a sharp one rather than running a blur filter over its node on every pulse. The sprite is
+ * looked up when the ball is first drawn and again whenever its color or blur changes.
+ */
+public final class Ball {
+
+    /**
+     * The blur applied to a ball once it has hit a wall. It is only ever applied once for each sprite, when the sprite
+     * of a blurred ball is rendered.
+     */
+    public static final BoxBlur WALL_BLUR = new BoxBlur(10, 10, 3);
+
+    /**
+     * The most sprites kept by the cache shared by every ball.
+     */
+    private static final int MAX_SPRITES = 512;
+
+    private static final SpriteCache SPRITES = new SpriteCache(MAX_SPRITES);
+
+    /**
+     * The palette of colors a ball can have. The BallStore tracks each ball's color as an index into this palette.
+     */
+    public static final Color[] COLORS = new Color[]{RED, ORANGE, YELLOW, GREEN, BLUE, INDIGO, VIOLET};
+
+    private final BallStore store;
+    private final int index;
+    private final ImageView view = new ImageView();
+    private int colorIndex;
+    private boolean blurred;
+    private Image sprite;
+
+    /**
+     * The Ball constructor appends the given state to the store and creates the view that will draw the ball.
+     * Notice the members are private and final meaning they are encapulated by the ball and cannot change once instantiated.
+     *
+     * @param store      is the BallStore that will hold the state of the ball
+     * @param centerX    is the initial x coordinate position of the ball when it is first created
+     * @param centerY    is the initial y coordinate position of the ball when it is first created
+     * @param radius     is the length from the edge of the ball to its center. This ultimately determines the size of the ball.
+     * @param xVelocity  is the speed in the horizontal direction the ball is traveling when it is first created.
+     * @param yVelocity  is the speed in the vertical direction in which the ball is traveling when it is first created
+     * @param mass       is the weight of the ball which influences collisions with other balls
+     * @param colorIndex is the index in the palette of the color of the ball when it is first created
+     */
+    public Ball(BallStore store, double centerX, double centerY, double radius, double xVelocity, double yVelocity, double mass, int colorIndex) {
+        this.store = store;
+        this.index = store.add(centerX, centerY, radius, xVelocity, yVelocity, mass, colorIndex);
+        this.colorIndex = colorIndex;
+    }
+
+    /**
+     * This constructor creates a handle for a ball that is already in the store, such as one loaded from a recording,
+     * with a view showing the ball as the store holds it.
+     *
+     * @param store is the BallStore holding the state of the ball
+     * @param index is the index of the ball in the store
+     */
+    public Ball(BallStore store, int index) {
+        this.store = store;
+        this.index = index;
+        setAppearance(store.getColorIndex(index), store.isBlurred(index));
+    }
+
+    /**
+     * Moves the view to the position of the ball in the store. This must be called on the JavaFX application thread.
+     */
+    public void syncView() {
+        moveView(store.getX(index), store.getY(index));
+    }
+
+    /**
+     * Moves the view to the position of the ball the given fraction of the way through the step held by the
+     * snapshot. The view is left where it is if the snapshot was taken before the ball was created.
+     * This must be called on the JavaFX application thread.
+     *
+     * @param snapshot is the latest step published by the simulation thread
+     * @param alpha    is how far through the step to place the view, between 0 and 1
+     */
+    public void syncView(Snapshot snapshot, double alpha) {
+        if (index < snapshot.size()) {
+            moveView(snapshot.getX(index, alpha), snapshot.getY(index, alpha));
+        }
+    }
+
+    /**
+     * Centers the view on the given position. The sprite of a blurred ball is larger than that of a sharp one, so the
+     * offset is taken from the sprite currently shown.
+     */
+    private void moveView(double centerX, double centerY) {
+        Image shown = getSprite();
+        view.setX(centerX - shown.getWidth() / 2);
+        view.setY(centerY - shown.getHeight() / 2);
+    }
+
+    /**
+     * Shows the given color and blur on the view. The new sprite is looked up the next time the ball is drawn. This
+     * must be called on the JavaFX application thread.
+     *
+     * @param colorIndex is the index in the palette of the color to fill the view with
+     * @param blurred    is whether the view should be blurred
+     */
+    public void setAppearance(int colorIndex, boolean blurred) {
+        if (colorIndex != this.colorIndex || blurred != this.blurred) {
+            this.colorIndex = colorIndex;
+            this.blurred = blurred;
+            sprite = null;
+        }
+    }
+
+    /**
+     * Returns the sprite showing the ball with its current color and blur, centered in the image, and puts it in the
+     * view. This must be called on the JavaFX application thread, since a sprite missing from the cache is rendered
+     * with a snapshot.
+     *
+     * @return the image of the ball
+     */
+    public Image getSprite() {
+        if (sprite == null) {
+            sprite = SPRITES.get(COLORS[colorIndex], store.getRadius(index), blurred);
+            view.setImage(sprite);
+        }
+        return sprite;
+    }
+
+    /**
+     * Below are simple getters and setters for the various properties of the Ball.
+     */
+
+    public BallStore getStore() {
+        return store;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public double getMass() {
+        return store.getMass(index);
+    }
+
+    public double getRadius() {
+        return store.getRadius(index);
+    }
+
+    public final double getXVelocity() {
+        return store.getXVelocity(index);
+    }
+
+    public final void setXVelocity(double xVelocity) {
+        store.setXVelocity(index, xVelocity);
+    }
+
+    public final double getYVelocity() {
+        return store.getYVelocity(index);
+    }
+
+    public final void setYVelocity(double yVelocity) {
+        store.setYVelocity(index, yVelocity);
+    }
+
+    public final double getSpeed() {
+        final double xVel = getXVelocity();
+        final double yVel = getYVelocity();
+        return sqrt(xVel * xVel + yVel * yVel);
+    }
+
+    public final double getCenterX() {
+        return store.getX(index);
+    }
+
+    public final void setCenterX(double centerX) {
+        store.setX(index, centerX);
+    }
+
+    public final double getCenterY() {
+        return store.getY(index);
+    }
+
+    public final void setCenterY(double centerY) {
+        store.setY(index, centerY);
+    }
+
+    public Node getView() {
+        return view;
+    }
+
+}
\ No newline at end of file
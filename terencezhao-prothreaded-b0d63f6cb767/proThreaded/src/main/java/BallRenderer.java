@@ -0,0 +1,39 @@
+import edu.uchicago.zhao.sim.Snapshot;
+import javafx.scene.layout.Pane;
+
+import java.util.List;
+
+/**
+ * A BallRenderer decides how the balls are drawn in the ball pane. The renderer is told when balls are added to or
+ * removed from the scene, and is asked to draw every ball once per pulse at the positions published by the simulation
+ * thread. All of its methods are called on the JavaFX application thread.
+ */
+public interface BallRenderer {
+
+    /**
+     * Places whatever the renderer needs into the ball pane. Called once when the application starts.
+     *
+     * @param ballPane is the pane the balls are drawn in
+     */
+    void attach(Pane ballPane);
+
+    /**
+     * @param added are the balls that were just added to the scene
+     */
+    void ballsAdded(List<? extends Ball> added);
+
+    /**
+     * @param removed are the balls that were just removed from the scene
+     */
+    void ballsRemoved(List<? extends Ball> removed);
+
+    /**
+     * Draws every ball at its position the given fraction of the way through the step held by the snapshot.
+     * Balls the snapshot does not know about yet are not drawn.
+     *
+     * @param balls    are the balls to draw
+     * @param snapshot is the latest step published by the simulation thread
+     * @param alpha    is how far through the step to draw the balls, between 0 and 1
+     */
+    void render(List<Ball> balls, Snapshot snapshot, double alpha);
+}
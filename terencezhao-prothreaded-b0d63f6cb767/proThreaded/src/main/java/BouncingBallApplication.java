@@ -0,0 +1,523 @@
+import edu.uchicago.zhao.sim.BroadPhaseType;
+import edu.uchicago.zhao.sim.CollisionHandler;
+import edu.uchicago.zhao.sim.CollisionScheduler;
+import edu.uchicago.zhao.sim.EventDrivenStepper;
+import edu.uchicago.zhao.sim.FrameTimings;
+import edu.uchicago.zhao.sim.LatencyHistogram;
+import edu.uchicago.zhao.sim.RecordingReader;
+import edu.uchicago.zhao.sim.SceneFile;
+import edu.uchicago.zhao.sim.Simulation;
+import edu.uchicago.zhao.sim.SimulationLoop;
+import edu.uchicago.zhao.sim.SimulationRecorder;
+import edu.uchicago.zhao.sim.Snapshot;
+import edu.uchicago.zhao.sim.Stepper;
+import edu.uchicago.zhao.sim.StripCoordinator;
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.beans.binding.Bindings;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.Separator;
+import javafx.scene.control.Slider;
+import javafx.scene.control.ToolBar;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.Pane;
+import javafx.stage.Stage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static java.lang.Math.*;
+
+/**
+ * SOURCE: https://gist.github.com/james-d/8327842#file-animationtimertest-java
+ * This BouncingBallApplication is inspired by the source code found at the above github.
+ * For this project, I added additional JavaFX user interface sliders which can control various properties related
+ * to the balls. These include increasing or decreasing the number of balls bouncing in the window, changing the range
+ * of sizes of the balls that get created, and determining the range of speeds the balls will travel.
+ * <p>
+ * The physics does not run on the AnimationTimer. A SimulationLoop steps the simulation on its own thread at a fixed
+ * rate, 120 steps per second unless the application is launched with --steps-per-second=N, and the AnimationTimer
+ * only draws the latest snapshot the loop published. How fast the physics runs and how often the balls are drawn are
+ * therefore independent of each other.
+ * <p>
+ * Launched with --record=FILE, the application records the state of every ball to the file, 60 frames per second of
+ * simulated time unless --record-rate=N says otherwise. Launched with --replay=FILE, it plays such a recording back
+ * instead of running the physics, and a slider in the tool bar jumps to any frame of it.
+ * <p>
+ * The Save and Load buttons save every ball, the size of the world and the seed the balls were spawned from to a file,
+ * balls.scene unless --scene=FILE names another, and restore them from it, so a run can be carried on from a saved
+ * scene. Launched with --seed=N, the spawns are seeded from N, so the same clicks spawn the same balls every time.
+ * <p>
+ * Launched with --engine=events, the loop steps the simulation with an EventDrivenStepper, which jumps from one
+ * collision to the next instead of checking for collisions once per step. Launched with --strips=N, it splits the
+ * world into N vertical strips instead and steps each of them in a JVM of its own, through a StripCoordinator that
+ * merges the strips back into the simulation for drawing.
+ */
+public class BouncingBallApplication extends Application {
+
+    private BorderPane root = new BorderPane();
+    public final Pane ballPane = new Pane();
+    private ToolBar toolBar = new ToolBar();
+
+    private Label ballCountLabel = new Label("Ball Count");
+    private Slider ballCountSlider = new Slider(0, 1000, 4);
+    private Label ballCountValue = new Label();
+
+    private Label ballRadiusLabel = new Label("Ball Size");
+    private Slider ballRadiusSlider = new Slider(5, 50, 20);
+    private Label ballRadiusValue = new Label();
+
+    private Label ballSpeedLabel = new Label("Ball Speed");
+    private Slider ballSpeedSlider = new Slider(50, 500, 250);
+    private Label ballSpeedValue = new Label();
+
+    private Label refreshRateLabel = new Label("Thread Count");
+    private Slider refreshRateSlider = new Slider(1, 100, 1);
+    private Label refreshRateValue = new Label();
+
+    private Label broadPhaseLabel = new Label("Broad Phase");
+    private ComboBox<BroadPhaseType> broadPhaseSelector = new ComboBox<>(FXCollections.observableArrayList(BroadPhaseType.values()));
+    private Label broadPhaseStatsValue = new Label();
+
+    private Label frameTimingsValue = new Label();
+
+    private Button saveSceneButton = new Button("Save");
+    private Button loadSceneButton = new Button("Load");
+
+    private Label replayFrameLabel = new Label("Frame");
+    private Slider replayFrameSlider = new Slider(0, 0, 0);
+    private Label replayFrameValue = new Label();
+
+    public static ObservableList<Ball> balls = FXCollections.observableArrayList();
+    public static final Simulation simulation = new Simulation();
+
+    private static final double BALL_DENSITY = 0.01;
+
+    private static final double DEFAULT_STEPS_PER_SECOND = 120;
+
+    private static final double DEFAULT_RECORD_RATE = 60;
+
+    private static final String DEFAULT_SCENE_PATH = "balls.scene";
+
+    /**
+     * How often the frame statistics in the tool bar are refreshed, and so how many frames each one summarizes.
+     */
+    private static final long STATS_REFRESH_NANOS = 1000000000L;
+
+    private SimulationLoop simulationLoop;
+    private BallRenderer renderer;
+    private long lastStatsRefresh;
+    private int framesSinceStatsRefresh;
+    private long lastStealCount;
+    private long lastBusyNanos;
+    private long lastCapacityNanos;
+    private SimulationRecorder recorder;
+    private RecordingReader replay;
+    private long replayStartFrame;
+    private long replayStartNanos = -1;
+    private long replayLoadedFrame = -1;
+    private boolean isUpdatingReplaySlider;
+
+    private Path scenePath;
+    private Random spawnSeeds;
+    private long spawnSeed;
+
+    /**
+     * Starting the application performs the following:
+     * Choose the renderer, which draws each ball as its own ImageView node unless the application was launched with
+     * --renderer=canvas, in which case every ball is drawn onto a single Canvas.
+     * Create the simulation loop, stepping at the rate given by --steps-per-second or 120 steps per second by default.
+     * Set the number of contacts in one step from which a collision storm is reported to Flight Recorder, given by
+     * --storm-contacts or Simulation.DEFAULT_STORM_THRESHOLD by default.
+     * Limit the number of sub-steps a step is split into to --max-substeps, or Simulation.DEFAULT_MAX_SUBSTEPS by
+     * default.
+     * Run the collision passes on --collision-threads threads, one per core by default, split into chunks of at most
+     * --split-threshold balls or pairs, or CollisionScheduler.DEFAULT_SPLIT_THRESHOLD by default.
+     * Start recording if --record was given, or open the recording to replay if --replay was given.
+     * Save and load scenes to and from --scene, or balls.scene by default, and seed the spawns from --seed if given.
+     * Turn continuous collision detection off if --collisions=discrete was given, or switch to the event driven
+     * engine if --engine=events was given, or start the worker processes of the strips if --strips was given.
+     * Apply listeners to the ball list so that the renderer knows each time balls are added or removed.
+     * Set up the ball pane so that when it is re-sized, the balls behave according to the new alloted space.
+     * Set up the various sliders which control the count, size and speed of the bouncing balls.
+     * Set up the user interface including the border pane sections and the window dimensions.
+     * Finally, being the bouncing ball animation.
+     *
+     * @param primaryStage is the main stage
+     */
+    @Override
+    public void start(Stage primaryStage) {
+        boolean isCanvasRenderer = "canvas".equals(getParameters().getNamed().get("renderer"));
+        renderer = isCanvasRenderer ? new CanvasRenderer() : new NodeRenderer();
+        renderer.attach(ballPane);
+        String stepsPerSecond = getParameters().getNamed().get("steps-per-second");
+        simulationLoop = new SimulationLoop(simulation,
+                stepsPerSecond != null ? Double.parseDouble(stepsPerSecond) : DEFAULT_STEPS_PER_SECOND);
+        if ("discrete".equals(getParameters().getNamed().get("collisions"))) {
+            CollisionHandler.setContinuous(false);
+        }
+        if ("events".equals(getParameters().getNamed().get("engine"))) {
+            simulationLoop.setStepper(new EventDrivenStepper(simulation));
+        }
+        String stormContacts = getParameters().getNamed().get("storm-contacts");
+        if (stormContacts != null) {
+            simulation.setStormThreshold(Long.parseLong(stormContacts));
+        }
+        String maxSubsteps = getParameters().getNamed().get("max-substeps");
+        if (maxSubsteps != null) {
+            simulation.setMaxSubsteps(Integer.parseInt(maxSubsteps));
+        }
+        String collisionThreads = getParameters().getNamed().get("collision-threads");
+        if (collisionThreads != null) {
+            CollisionHandler.setParallelism(Integer.parseInt(collisionThreads));
+        }
+        String splitThreshold = getParameters().getNamed().get("split-threshold");
+        if (splitThreshold != null) {
+            CollisionHandler.getScheduler().setSplitThreshold(Integer.parseInt(splitThreshold));
+        }
+        String sceneFile = getParameters().getNamed().get("scene");
+        scenePath = Paths.get(sceneFile != null ? sceneFile : DEFAULT_SCENE_PATH);
+        String seed = getParameters().getNamed().get("seed");
+        spawnSeeds = seed != null ? new Random(Long.parseLong(seed)) : new Random();
+        try {
+            String recordPath = getParameters().getNamed().get("record");
+            if (recordPath != null) {
+                String recordRate = getParameters().getNamed().get("record-rate");
+                recorder = new SimulationRecorder(Paths.get(recordPath),
+                        recordRate != null ? Double.parseDouble(recordRate) : DEFAULT_RECORD_RATE);
+                simulationLoop.setRecorder(recorder);
+            }
+            String replayPath = getParameters().getNamed().get("replay");
+            if (replayPath != null) {
+                replay = new RecordingReader(Paths.get(replayPath));
+            }
+            String strips = getParameters().getNamed().get("strips");
+            if (strips != null) {
+                simulationLoop.setStepper(new StripCoordinator(simulation, Integer.parseInt(strips)));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        balls.addListener(new ListChangeListener<Ball>() {
+            public void onChanged(Change<? extends Ball> change) {
+                while (change.next()) {
+                    renderer.ballsRemoved(change.getRemoved());
+                    renderer.ballsAdded(change.getAddedSubList());
+                }
+            }
+        });
+        setUpBallPane();
+        setUpSliders();
+        setUpToolBar();
+        root.setCenter(ballPane);
+        root.setBottom(toolBar);
+        final Scene scene = new Scene(root, 1000, 1000);
+        primaryStage.setScene(scene);
+        primaryStage.show();
+        animate();
+        primaryStage.setOnCloseRequest(we -> primaryStage.close());
+
+    }
+
+    /**
+     * Stops the simulation thread when the application exits, along with the threads or processes of its stepper, if
+     * any, and then closes the recording, if any, so that its index is written.
+     */
+    @Override
+    public void stop() {
+        simulationLoop.stop();
+        Stepper stepper = simulationLoop.getStepper();
+        if (stepper != null) {
+            stepper.shutdown();
+        }
+        try {
+            if (recorder != null) {
+                recorder.close();
+            }
+            if (replay != null) {
+                replay.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Setting up the ball pane involves adding a click listener which triggers the balls to be created, unless a
+     * recording is being replayed.
+     * The number, size, and speed of the balls will be determined by the current values set on the sliders.
+     * The position at which the balls will spawn is determined by the location in which the mouse is clicked.
+     * Additionally, we set listeners on the width and height dimensions of the Pane, handing the new size to the
+     * simulation so the balls adjust their wall collision to the newly sized container on the next step.
+     */
+    private void setUpBallPane() {
+        ballPane.addEventHandler(MouseEvent.MOUSE_CLICKED, event -> {
+            if (replay == null) {
+                createBalls(event.getX(), event.getY());
+            }
+        });
+        ballPane.widthProperty().addListener((observable, oldValue, newValue) ->
+                simulation.setBounds(ballPane.getWidth(), ballPane.getHeight()));
+        ballPane.heightProperty().addListener((observable, oldValue, newValue) ->
+                simulation.setBounds(ballPane.getWidth(), ballPane.getHeight()));
+    }
+
+    /**
+     * Setting up the sliders is simple since they are all very similar in functionality.
+     * Each slider is configured so that the major tick unit increases and decreases by 1.
+     * The minimum, maximum and current slider values are defined in the Slider creation.
+     */
+    private void setUpSliders() {
+        List<Slider> sliders = new ArrayList<>();
+        sliders.add(ballCountSlider);
+        sliders.add(ballRadiusSlider);
+        sliders.add(ballSpeedSlider);
+        sliders.add(refreshRateSlider);
+        sliders.forEach(slider -> {
+            slider.setMajorTickUnit(1);
+            slider.setMinorTickCount(0);
+            slider.setBlockIncrement(1);
+            slider.setSnapToTicks(true);
+        });
+    }
+
+    /**
+     * Setting up the tool bar involves placing all the sliders adjacent to one another with their respective
+     * labels and values displaying as expected. We format the value of the slider to be an integer value and
+     * also put a bar separator between each slider/label grouping.
+     * After the sliders comes the broad phase selector, which switches the broad phase used by the CollisionHandler
+     * while the simulation is running, followed by the statistics the broad phase recorded, refreshed once a second.
+     * Last come the frame timings: the frame rate, the contact count and the median, 99th percentile and worst time
+     * of each phase of a frame over the last second.
+     * When replaying a recording, the frame slider comes first. Dragging it makes the replay carry on from the frame
+     * it was dragged to. Otherwise the buttons that save and load the scene come first.
+     */
+    private void setUpToolBar() {
+        ballRadiusValue.textProperty().bind(Bindings.format("%.0f", ballRadiusSlider.valueProperty()));
+        ballCountValue.textProperty().bind(Bindings.format("%.0f", ballCountSlider.valueProperty()));
+        ballSpeedValue.textProperty().bind(Bindings.format("%.0f", ballSpeedSlider.valueProperty()));
+        refreshRateValue.textProperty().bind(Bindings.format("%.0f", refreshRateSlider.valueProperty()));
+        broadPhaseSelector.setValue(CollisionHandler.getBroadPhaseType());
+        broadPhaseSelector.valueProperty().addListener((observable, oldValue, newValue) -> CollisionHandler.setBroadPhaseType(newValue));
+        frameTimingsValue.setStyle("-fx-font-family: monospace; -fx-font-size: 10;");
+        if (replay != null) {
+            replayFrameSlider.setMax(Math.max(0, replay.getFrameCount() - 1));
+            replayFrameValue.textProperty().bind(Bindings.format("%.0f", replayFrameSlider.valueProperty()));
+            replayFrameSlider.valueProperty().addListener((observable, oldValue, newValue) -> {
+                if (!isUpdatingReplaySlider) {
+                    replayStartFrame = newValue.longValue();
+                    replayStartNanos = -1;
+                }
+            });
+            toolBar.getItems().addAll(replayFrameLabel, replayFrameSlider, replayFrameValue, new Separator());
+        } else {
+            saveSceneButton.setOnAction(event -> saveScene());
+            loadSceneButton.setOnAction(event -> loadScene());
+            toolBar.getItems().addAll(saveSceneButton, loadSceneButton, new Separator());
+        }
+        toolBar.getItems().addAll(
+                ballRadiusLabel, ballRadiusSlider, ballRadiusValue, new Separator(),
+                ballCountLabel, ballCountSlider, ballCountValue, new Separator(),
+                ballSpeedLabel, ballSpeedSlider, ballSpeedValue, new Separator(),
+                broadPhaseLabel, broadPhaseSelector, broadPhaseStatsValue, new Separator(),
+                frameTimingsValue
+//                ,refreshRateLabel, refreshRateSlider, refreshRateValue
+        );
+    }
+
+    /**
+     * Animating the balls involves using the JavaFX AnimationTimer together with the SimulationLoop. The loop steps the
+     * simulation on its own thread and the AnimationTimer only draws. On each pulse, the latest snapshot is taken from
+     * the loop, the color and blur changes recorded by the steps are applied, and the renderer draws the balls
+     * interpolated between the two positions in the snapshot, one step behind the simulation.
+     * How long applying the changes and rendering took is recorded in the FrameTimings, next to the phases recorded
+     * by the simulation thread, and once a second the statistics in the tool bar are refreshed from them.
+     * When replaying a recording, the simulation loop is never started and the snapshot comes from the recording
+     * instead.
+     */
+    private void animate() {
+        final AnimationTimer animationTimer = new AnimationTimer() {
+            @Override
+            public void handle(long timestamp) {
+                Snapshot snapshot = replay != null ? replayFrame(timestamp) : simulationLoop.latestSnapshot();
+                long applyStart = System.nanoTime();
+                simulation.getChanges().apply(simulation.getStore(),
+                        (ball, colorIndex, blurred) -> balls.get(ball).setAppearance(colorIndex, blurred));
+                long renderStart = System.nanoTime();
+                renderer.render(balls, snapshot, snapshot.alphaAt(renderStart));
+                long renderEnd = System.nanoTime();
+                FrameTimings.record(FrameTimings.Phase.APPLY_CHANGES, renderStart - applyStart);
+                FrameTimings.record(FrameTimings.Phase.RENDER, renderEnd - renderStart);
+                framesSinceStatsRefresh++;
+                if (renderEnd - lastStatsRefresh >= STATS_REFRESH_NANOS) {
+                    refreshStats(renderEnd);
+                }
+            }
+        };
+        animationTimer.start();
+        if (replay == null) {
+            simulationLoop.start();
+        }
+    }
+
+    /**
+     * Loads the frame of the recording that is due at the given time, playing it at the rate it was recorded at from
+     * wherever the frame slider last left it, and stopping at the last frame. Nothing is read while the due frame is
+     * still the one loaded. If the frame belongs to a different set of balls than the one loaded before, the balls are
+     * recreated from the store in a single change to the ball list.
+     *
+     * @param now is the timestamp of the current pulse
+     * @return the snapshot holding the loaded frame
+     */
+    private Snapshot replayFrame(long now) {
+        if (replayStartNanos < 0) {
+            replayStartNanos = now;
+        }
+        long frame = replayStartFrame + (long) ((now - replayStartNanos) * replay.getFramesPerSecond() / 1e9);
+        frame = Math.min(frame, replay.getFrameCount() - 1);
+        if (frame >= 0 && frame != replayLoadedFrame) {
+            try {
+                if (replay.loadFrame(frame, simulation)) {
+                    List<Ball> loaded = new ArrayList<>(simulation.getStore().size());
+                    for (int i = 0; i < simulation.getStore().size(); i++) {
+                        loaded.add(new Ball(simulation.getStore(), i));
+                    }
+                    balls.setAll(loaded);
+                }
+                replayLoadedFrame = frame;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            isUpdatingReplaySlider = true;
+            replayFrameSlider.setValue(frame);
+            isUpdatingReplaySlider = false;
+        }
+        return replay.getSnapshot();
+    }
+
+    /**
+     * Shows the frame statistics gathered since the last refresh in the tool bar and starts gathering anew, along with
+     * how many chunks the collision threads stole from each other since then and how much of their time they spent
+     * idle. This builds a few strings, which is why it only runs once a second rather than on every frame.
+     *
+     * @param now is the current System.nanoTime
+     */
+    private void refreshStats(long now) {
+        double fps = framesSinceStatsRefresh * 1e9 / (now - lastStatsRefresh);
+        CollisionScheduler scheduler = CollisionHandler.getScheduler();
+        long stealCount = scheduler.getStealCount();
+        long busyNanos = scheduler.getBusyNanos();
+        long capacityNanos = scheduler.getCapacityNanos();
+        long capacity = capacityNanos - lastCapacityNanos;
+        double idle = capacity > 0 ? 100.0 * (1 - (double) (busyNanos - lastBusyNanos) / capacity) : 0;
+        StringBuilder text = new StringBuilder(String.format("FPS %.0f  Sub-steps %d  Contacts %d  Steals %d  Idle %.0f%%  (p50/p99/max ms)",
+                fps, simulation.getLastSubsteps(), CollisionHandler.getLastStats().getContacts(),
+                Math.max(0, stealCount - lastStealCount), Math.max(0, idle)));
+        lastStealCount = stealCount;
+        lastBusyNanos = busyNanos;
+        lastCapacityNanos = capacityNanos;
+        for (FrameTimings.Phase phase : FrameTimings.Phase.values()) {
+            LatencyHistogram histogram = FrameTimings.histogram(phase);
+            text.append(String.format("%n%-8s %6.2f %6.2f %6.2f", phase,
+                    histogram.percentile(0.5) / 1e6, histogram.percentile(0.99) / 1e6, histogram.getMax() / 1e6));
+        }
+        frameTimingsValue.setText(text.toString());
+        broadPhaseStatsValue.setText(CollisionHandler.getLastStats().toString());
+        FrameTimings.reset();
+        framesSinceStatsRefresh = 0;
+        lastStatsRefresh = now;
+    }
+
+    /**
+     * The createBalls helper method takes in the intial X and Y mouse click position in order to determine where
+     * the balls will be spawned. Based on the current value of the ball count slider, it creates balls ranging in size
+     * and speed based on the current values of the respective sliders. The balls are replaced while the simulation
+     * loop is paused between steps, so that no step ever sees a half built set of balls, and the ball list is replaced
+     * in one go, so the renderer is told about the whole spawn at once rather than ball by ball.
+     *
+     * @param initialX is the initial x click position
+     * @param initialY is the initial y click position
+     */
+    private void createBalls(double initialX, double initialY) {
+        simulationLoop.runPaused(() -> replaceBalls(initialX, initialY));
+    }
+
+    /**
+     * Replaces the balls with a new set spawned at the given position.
+     */
+    private void replaceBalls(double initialX, double initialY) {
+        simulation.clear();
+        refreshRateSlider.valueProperty().intValue();
+        int ballCount = ballCountSlider.valueProperty().intValue();
+        double minRadius = ballRadiusSlider.getMin();
+        double maxRadius = ballRadiusSlider.valueProperty().intValue();
+        double minSpeed = ballSpeedSlider.getMin();
+        double maxSpeed = ballSpeedSlider.valueProperty().intValue();
+        spawnSeed = spawnSeeds.nextLong();
+        final Random random = new Random(spawnSeed);
+        List<Ball> spawned = new ArrayList<>(ballCount);
+        IntStream.range(0, ballCount).forEach(i -> {
+            double radius = minRadius + (maxRadius - minRadius) * random.nextDouble();
+            double volume = Math.pow((4 / 3) * PI * radius, 3);
+            double mass = BALL_DENSITY * volume;
+            final double speed = minSpeed + (maxSpeed - minSpeed) * random.nextDouble();
+            final double angle = 2 * PI * random.nextDouble();
+            final int colorIndex = i % Ball.COLORS.length;
+            Ball ball = new Ball(simulation.getStore(), initialX, initialY, radius, speed * cos(angle), speed * sin(angle), mass, colorIndex);
+            spawned.add(ball);
+        });
+        balls.setAll(spawned);
+    }
+
+    /**
+     * Saves the scene while the simulation loop is paused, so that the file holds the balls exactly as one step left
+     * them.
+     */
+    private void saveScene() {
+        simulationLoop.runPaused(() -> {
+            try {
+                SceneFile.save(scenePath, simulation, spawnSeed);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Replaces the balls with those of the saved scene while the simulation loop is paused, and recreates the view of
+     * every ball. The world takes the size it was saved with until the window is next resized, so the run carries on
+     * exactly as it would have from the moment it was saved. Later spawns are seeded from the saved seed, so they are
+     * the same every time the scene is loaded.
+     */
+    private void loadScene() {
+        simulationLoop.runPaused(() -> {
+            try {
+                spawnSeed = SceneFile.restore(scenePath, simulation);
+                spawnSeeds = new Random(spawnSeed);
+                List<Ball> loaded = new ArrayList<>(simulation.getStore().size());
+                for (int i = 0; i < simulation.getStore().size(); i++) {
+                    loaded.add(new Ball(simulation.getStore(), i));
+                }
+                balls.setAll(loaded);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    public static void main(String[] args) {
+        launch(args);
+    }
+}
@@ -0,0 +1,54 @@
+import edu.uchicago.zhao.sim.Snapshot;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
+import javafx.scene.image.Image;
+
+import java.util.List;
+
+/**
+ * The CanvasRenderer draws every ball onto a single Canvas that covers the ball pane, so the scene graph holds one node
+ * no matter how many balls there are. The whole canvas is cleared and redrawn on every pulse.
+ * <p>
+ * The balls look the same as with the NodeRenderer, since both draw the sprite each ball holds from the SpriteCache
+ * shared by every ball: filled with its color, outlined with a 2 pixel black stroke drawn outside the ball and blurred
+ * once it has hit a wall. A blurred ball therefore costs the same image copy as a sharp one. The views of the balls
+ * are never added to the scene graph.
+ */
+public class CanvasRenderer implements BallRenderer {
+
+    private final Canvas canvas = new Canvas();
+
+    /**
+     * Adds the canvas to the ball pane and keeps it the same size as the pane. The canvas is not managed so that it
+     * never affects the layout of the pane.
+     */
+    public void attach(Pane ballPane) {
+        canvas.setManaged(false);
+        canvas.widthProperty().bind(ballPane.widthProperty());
+        canvas.heightProperty().bind(ballPane.heightProperty());
+        ballPane.getChildren().add(canvas);
+    }
+
+    public void ballsAdded(List<? extends Ball> added) {
+    }
+
+    public void ballsRemoved(List<? extends Ball> removed) {
+    }
+
+    /**
+     * Clears the canvas and draws the sprite of every ball centered on its interpolated position in the snapshot.
+     */
+    public void render(List<Ball> balls, Snapshot snapshot, double alpha) {
+        GraphicsContext graphics = canvas.getGraphicsContext2D();
+        graphics.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        for (Ball ball : balls) {
+            int index = ball.getIndex();
+            if (index >= snapshot.size()) {
+                continue;
+            }
+            Image sprite = ball.getSprite();
+            graphics.drawImage(sprite, snapshot.getX(index, alpha) - sprite.getWidth() / 2, snapshot.getY(index, alpha) - sprite.getHeight() / 2);
+        }
+    }
+}
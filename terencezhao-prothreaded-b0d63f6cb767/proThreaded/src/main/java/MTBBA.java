@@ -1,3 +1,10 @@
+import edu.uchicago.zhao.sim.BallActorStepper;
+import edu.uchicago.zhao.sim.BroadPhaseType;
+import edu.uchicago.zhao.sim.CollisionHandler;
+import edu.uchicago.zhao.sim.EventDrivenStepper;
+import edu.uchicago.zhao.sim.PartitionedStepper;
+import edu.uchicago.zhao.sim.Simulation;
+import edu.uchicago.zhao.sim.Stepper;
 import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.beans.binding.Bindings;
@@ -7,6 +14,7 @@ import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.scene.Scene;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.Separator;
 import javafx.scene.control.Slider;
@@ -14,24 +22,25 @@ import javafx.scene.control.ToolBar;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.Pane;
-import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.stream.IntStream;
 
 import static java.lang.Math.PI;
 import static java.lang.Math.cos;
 import static java.lang.Math.sin;
-import static javafx.scene.paint.Color.*;
 
 /**
  *
- * This Version of the application uses individual threads for each ball.
+ * This Version of the application steps the simulation with a fixed pool of worker threads, each of which handles
+ * its own range of the balls. The number of workers is set with the Thread Count slider and takes effect the next
+ * time balls are spawned. Launched with --stepper=actors, it instead gives every ball a virtual thread of its own
+ * that looks after that ball, which lets the ball count go up to a hundred thousand, scattered over the whole window
+ * rather than spawned on the click point. Launched with --stepper=events, it uses no worker threads at all and jumps
+ * from one collision to the next with an EventDrivenStepper instead.
  *
  * SOURCE: https://gist.github.com/james-d/8327842#file-animationtimertest-java
  * This BouncingBallApplication is inspired by the source code found at the above github.
@@ -65,14 +74,36 @@ public class MTBBA extends Application {
     private Slider refreshRateSlider = new Slider(1, 100, 1);
     private Label refreshRateValue = new Label();
 
+    private Label broadPhaseLabel = new Label("Broad Phase");
+    private ComboBox<BroadPhaseType> broadPhaseSelector = new ComboBox<>(FXCollections.observableArrayList(BroadPhaseType.values()));
+    private Label broadPhaseStatsValue = new Label();
+
     public static ObservableList<Ball> balls = FXCollections.observableArrayList();
+    public static final Simulation simulation = new Simulation();
 
     private static final double BALL_DENSITY = 0.01;
-    private static final Color[] COLORS = new Color[]{RED, ORANGE, YELLOW, GREEN, BLUE, INDIGO, VIOLET};
+
+    private static final int ACTOR_MODE_MAX_BALLS = 100000;
+
+    /**
+     * The largest share of the ball pane the balls of a spawn may cover in actor mode before they are shrunk.
+     */
+    private static final double ACTOR_MODE_MAX_FILL = 0.5;
+
+    private boolean isActorMode;
+    private boolean isEventMode;
+    private Stepper stepper;
+    private int stepperThreadCount;
+    private final NodeRenderer renderer = new NodeRenderer();
 
     /**
      * Starting the application performs the following:
-     * Apply listeners to the ball list so that the circles can be redrawn each time the balls change position.
+     * Choose between the worker pool, one virtual thread per ball and the event driven stepper, depending on the
+     * --stepper parameter.
+     * Apply listeners to the ball list so that the circles can be redrawn each time the balls change position. Every
+     * spawn replaces the whole list, and the listener hands the old and new balls to a NodeRenderer, which clears the
+     * pane of the old circles at once and adds the new ones a few thousand a pulse, so that spawning a hundred thousand
+     * balls in actor mode does not freeze the window for the pulse that follows.
      * Set up the ball pane so that when it is re-sized, the balls behave according to the new alloted space.
      * Set up the various sliders which control the count, size and speed of the bouncing balls.
      * Set up the user interface including the border pane sections and the window dimensions.
@@ -82,11 +113,17 @@ public class MTBBA extends Application {
      */
     @Override
     public void start(Stage primaryStage) {
+        isActorMode = "actors".equals(getParameters().getNamed().get("stepper"));
+        isEventMode = "events".equals(getParameters().getNamed().get("stepper"));
+        if (isActorMode) {
+            ballCountSlider.setMax(ACTOR_MODE_MAX_BALLS);
+        }
+        renderer.attach(ballPane);
         balls.addListener(new ListChangeListener<Ball>() {
             public void onChanged(Change<? extends Ball> change) {
                 while (change.next()) {
-                    change.getAddedSubList().forEach(ball -> ballPane.getChildren().add(ball.getView()));
-                    change.getRemoved().forEach(ball -> ballPane.getChildren().remove(ball.getView()));
+                    renderer.ballsRemoved(change.getRemoved());
+                    renderer.ballsAdded(change.getAddedSubList());
                 }
             }
         });
@@ -98,38 +135,32 @@ public class MTBBA extends Application {
         final Scene scene = new Scene(root, 1000, 1000);
         primaryStage.setScene(scene);
         primaryStage.show();
-        animate(ballPane);
+        animate();
+    }
+
+    /**
+     * Lets the worker threads exit when the application closes.
+     */
+    @Override
+    public void stop() {
+        if (stepper != null) {
+            stepper.shutdown();
+        }
     }
 
     /**
      * Setting up the ball pane involves adding a click listener which triggers the balls to be created.
      * The number, size, and speed of the balls will be determined by the current values set on the sliders.
      * The position at which the balls will spawn is determined by the location in which the mouse is clicked.
-     * Additionally, we set listeners on the width and height dimensions of the Pane, allowing the balls to adjust
-     * their wall collision based on the newly sized container.
+     * Additionally, we set listeners on the width and height dimensions of the Pane, handing the new size to the
+     * simulation so the balls adjust their wall collision to the newly sized container on the next step.
      */
     private void setUpBallPane() {
         ballPane.addEventHandler(MouseEvent.MOUSE_CLICKED, event -> createBalls(event.getX(), event.getY()));
-        ballPane.widthProperty().addListener((observable, oldValue, newValue) -> {
-            if (newValue.doubleValue() < oldValue.doubleValue()) {
-                balls.parallelStream().forEach(ball -> {
-                    double max = newValue.doubleValue() - ball.getRadius();
-                    if (ball.getCenterX() > max) {
-                        ball.setCenterX(max);
-                    }
-                });
-            }
-        });
-        ballPane.heightProperty().addListener((observable, oldValue, newValue) -> {
-            if (newValue.doubleValue() < oldValue.doubleValue()) {
-                balls.parallelStream().forEach(ball -> {
-                    double max = newValue.doubleValue() - ball.getRadius();
-                    if (ball.getCenterY() > max) {
-                        ball.setCenterY(max);
-                    }
-                });
-            }
-        });
+        ballPane.widthProperty().addListener((observable, oldValue, newValue) ->
+                simulation.setBounds(ballPane.getWidth(), ballPane.getHeight()));
+        ballPane.heightProperty().addListener((observable, oldValue, newValue) ->
+                simulation.setBounds(ballPane.getWidth(), ballPane.getHeight()));
     }
 
     /**
@@ -155,41 +186,48 @@ public class MTBBA extends Application {
      * Setting up the tool bar involves placing all the sliders adjacent to one another with their respective
      * labels and values displaying as expected. We format the value of the slider to be an integer value and
      * also put a bar separator between each slider/label grouping.
+     * After the sliders comes the broad phase selector, which switches the broad phase used by the CollisionHandler
+     * while the simulation is running, followed by the statistics the broad phase recorded on the last frame.
      */
     private void setUpToolBar() {
         ballRadiusValue.textProperty().bind(Bindings.format("%.0f", ballRadiusSlider.valueProperty()));
         ballCountValue.textProperty().bind(Bindings.format("%.0f", ballCountSlider.valueProperty()));
         ballSpeedValue.textProperty().bind(Bindings.format("%.0f", ballSpeedSlider.valueProperty()));
         refreshRateValue.textProperty().bind(Bindings.format("%.0f", refreshRateSlider.valueProperty()));
+        broadPhaseSelector.setValue(CollisionHandler.getBroadPhaseType());
+        broadPhaseSelector.valueProperty().addListener((observable, oldValue, newValue) -> CollisionHandler.setBroadPhaseType(newValue));
         toolBar.getItems().addAll(
                 ballRadiusLabel, ballRadiusSlider, ballRadiusValue, new Separator(),
                 ballCountLabel, ballCountSlider, ballCountValue, new Separator(),
-                ballSpeedLabel, ballSpeedSlider, ballSpeedValue, new Separator()
-//                ,refreshRateLabel, refreshRateSlider, refreshRateValue
+                ballSpeedLabel, ballSpeedSlider, ballSpeedValue, new Separator(),
+                refreshRateLabel, refreshRateSlider, refreshRateValue, new Separator(),
+                broadPhaseLabel, broadPhaseSelector, broadPhaseStatsValue
         );
     }
 
     /**
      * Animating the balls involves using the JavaFX AnimationTimer. On each frame, the handle method is called with
      * the current timestamp. At these intervals, we perform the collision detection and handling while also updating the
-     * position of the balls based on the amount of time that has elapsed between each frame.
-     *
-     * @param ballContainer is the ball container
+     * position of the balls based on the amount of time that has elapsed between each frame. A long frame with fast
+     * balls is split into as many sub-steps as the simulation needs, and the number used is shown in the tool bar.
+     * The new positions are computed by the worker pool and then synced to the view of each ball, along with the
+     * color and blur changes the step recorded. Nothing is stepped until the first balls are spawned.
      */
-    private void animate(final Pane ballContainer) {
+    private void animate() {
         final LongProperty lastUpdateTime = new SimpleLongProperty(0);
         final AnimationTimer animationTimer = new AnimationTimer() {
             @Override
             public void handle(long timestamp) {
-                if (lastUpdateTime.get() > 0) {
+                if (lastUpdateTime.get() > 0 && stepper != null) {
                     long elapsedTime = timestamp - lastUpdateTime.get();
-                    CollisionHandler.handleCollisions(balls, ballContainer);
                     double elapsedSeconds = elapsedTime / 1000000000.0;
-                    balls.forEach(ball -> {
-                        ball.setCenterX(ball.getCenterX() + elapsedSeconds * ball.getXVelocity());
-                        ball.setCenterY(ball.getCenterY() + elapsedSeconds * ball.getYVelocity());
-                    });
+                    stepper.step(elapsedSeconds);
+                    simulation.getChanges().apply(simulation.getStore(),
+                            (ball, colorIndex, blurred) -> balls.get(ball).setAppearance(colorIndex, blurred));
+                    broadPhaseStatsValue.setText(CollisionHandler.getLastStats() + "  Sub-steps " + simulation.getLastSubsteps());
+                    balls.forEach(Ball::syncView);
                 }
+                renderer.addPendingViews();
                 lastUpdateTime.set(timestamp);
             }
         };
@@ -199,34 +237,67 @@ public class MTBBA extends Application {
     /**
      * The createBalls helper method takes in the intial X and Y mouse click position in order to determine where
      * the balls will be spawned. Based on the current value of the ball count slider, it creates balls ranging in size
-     * and speed based on the current values of the respective sliders. Finally, a new Thread is created to wrap each
-     * ball and the thread is started.
+     * and speed based on the current values of the respective sliders. If the Thread Count slider was moved since the
+     * last spawn, the worker pool is replaced by one of the new size. In actor mode the stepper is always replaced,
+     * since it starts one thread for each of the balls it was created with. The event driven stepper is kept, and
+     * rebuilds its predictions for the new balls on its next step.
+     * <p>
+     * In actor mode the balls are scattered over the whole ball pane rather than stacked on the click point. With up
+     * to a hundred thousand balls on a single point, every ball would touch every other one, and the broad phase would
+     * report billions of candidate pairs on the first step, far more than the pair lists can hold. For the same
+     * reason, when balls of the chosen sizes would together cover more than ACTOR_MODE_MAX_FILL of the pane, every
+     * radius is scaled down until they no longer do.
      *
      * @param initialX is the initial x click position
      * @param initialY is the initial y click position
      */
     private void createBalls(double initialX, double initialY) {
-        balls.clear();
-        refreshRateSlider.valueProperty().intValue();
+        simulation.clear();
+        int threadCount = refreshRateSlider.valueProperty().intValue();
+        if (stepper != null && (isActorMode || (!isEventMode && stepperThreadCount != threadCount))) {
+            stepper.shutdown();
+            stepper = null;
+        }
         int ballCount = ballCountSlider.valueProperty().intValue();
         double minRadius = ballRadiusSlider.getMin();
         double maxRadius = ballRadiusSlider.valueProperty().intValue();
         double minSpeed = ballSpeedSlider.getMin();
         double maxSpeed = ballSpeedSlider.valueProperty().intValue();
+        double paneWidth = ballPane.getWidth();
+        double paneHeight = ballPane.getHeight();
+        double meanArea = PI * (minRadius * minRadius + minRadius * maxRadius + maxRadius * maxRadius) / 3;
+        final double radiusScale = isActorMode
+                ? Math.min(1, Math.sqrt(ACTOR_MODE_MAX_FILL * paneWidth * paneHeight / (ballCount * meanArea)))
+                : 1;
         final Random random = new Random();
+        List<Ball> spawned = new ArrayList<>(ballCount);
         IntStream.range(0, ballCount).forEach(i -> {
-            double radius = minRadius + (maxRadius - minRadius) * random.nextDouble();
+            double radius = (minRadius + (maxRadius - minRadius) * random.nextDouble()) * radiusScale;
             double volume = Math.pow((4 / 3) * PI * radius, 3);
             double mass = BALL_DENSITY * volume;
             final double speed = minSpeed + (maxSpeed - minSpeed) * random.nextDouble();
             final double angle = 2 * PI * random.nextDouble();
-            final Color color = COLORS[i % COLORS.length];
-            Ball ball = new Ball(initialX, initialY, radius, speed * cos(angle), speed * sin(angle), mass, color);
-            balls.add(ball);
-            Thread thread = new Thread(new BallRunnable(ball, ballPane));
-            thread.setDaemon(true);
-            thread.start();
+            final int colorIndex = i % Ball.COLORS.length;
+            double x = initialX;
+            double y = initialY;
+            if (isActorMode) {
+                x = radius + Math.max(0, paneWidth - 2 * radius) * random.nextDouble();
+                y = radius + Math.max(0, paneHeight - 2 * radius) * random.nextDouble();
+            }
+            Ball ball = new Ball(simulation.getStore(), x, y, radius, speed * cos(angle), speed * sin(angle), mass, colorIndex);
+            spawned.add(ball);
         });
+        balls.setAll(spawned);
+        if (stepper == null) {
+            if (isActorMode) {
+                stepper = new BallActorStepper(simulation);
+            } else if (isEventMode) {
+                stepper = new EventDrivenStepper(simulation);
+            } else {
+                stepper = new PartitionedStepper(simulation, threadCount);
+            }
+            stepperThreadCount = threadCount;
+        }
     }
 
     public static void main(String[] args) {
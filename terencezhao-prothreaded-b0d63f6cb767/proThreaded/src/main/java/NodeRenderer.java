@@ -0,0 +1,102 @@
+import edu.uchicago.zhao.sim.Snapshot;
+import javafx.collections.ObservableList;
+import javafx.scene.Node;
+import javafx.scene.layout.Pane;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The NodeRenderer draws each ball with its own ImageView node in the scene graph, showing the sprite of the ball. No
+ * ball carries an effect of its own, so a blurred ball costs no more to draw than a sharp one, but each ball is still
+ * a full node that the scene graph has to sync, so it becomes expensive with many balls.
+ * <p>
+ * Views are added to and removed from the ball pane in bulk, so that a spawn costs the pane a single change rather
+ * than one for every ball. Adding a node costs more than the add itself, since the pulse that follows styles, lays out
+ * and syncs every new node, so a spawn of more than VIEWS_PER_PULSE balls is spread over several pulses, the views of
+ * the first VIEWS_PER_PULSE balls appearing on the first pulse, the next ones on the one after, and so on. Every pulse
+ * therefore stays short however many balls are spawned, and the balls still waiting for their views are simulated all
+ * the same.
+ */
+public class NodeRenderer implements BallRenderer {
+
+    /**
+     * The most views added to the scene graph on a single pulse.
+     */
+    private static final int VIEWS_PER_PULSE = 2000;
+
+    private Pane ballPane;
+    private final ArrayDeque<Node> pendingViews = new ArrayDeque<>();
+
+    public void attach(Pane ballPane) {
+        this.ballPane = ballPane;
+    }
+
+    /**
+     * Queues the views of the balls to be added to the ball pane over the coming pulses.
+     */
+    public void ballsAdded(List<? extends Ball> added) {
+        added.forEach(ball -> pendingViews.add(ball.getView()));
+    }
+
+    /**
+     * Removes the views of the balls from the ball pane, or from the queue if they were never added. When every view in
+     * the pane goes, as it does whenever a spawn replaces the balls, the pane is simply cleared. Otherwise each run of
+     * neighbouring views is removed as one range, starting from the end so that the views left behind move as little
+     * as possible. Removing the views one at a time, or even with removeAll, takes time in proportion to the square
+     * of their number, several seconds for a hundred thousand balls.
+     */
+    public void ballsRemoved(List<? extends Ball> removed) {
+        if (removed.isEmpty()) {
+            return;
+        }
+        Set<Node> views = new HashSet<>(removed.size() * 2);
+        removed.forEach(ball -> views.add(ball.getView()));
+        if (!pendingViews.isEmpty()) {
+            pendingViews.removeIf(views::contains);
+        }
+        ObservableList<Node> children = ballPane.getChildren();
+        if (views.containsAll(children)) {
+            children.clear();
+            return;
+        }
+        int index = children.size();
+        while (index > 0) {
+            int runEnd = index;
+            while (index > 0 && views.contains(children.get(index - 1))) {
+                index--;
+            }
+            if (index < runEnd) {
+                children.remove(index, runEnd);
+            } else {
+                index--;
+            }
+        }
+    }
+
+    /**
+     * Adds the next views waiting in the queue to the ball pane, then moves the view of every ball to the ball's
+     * interpolated position in the snapshot.
+     */
+    public void render(List<Ball> balls, Snapshot snapshot, double alpha) {
+        addPendingViews();
+        balls.forEach(ball -> ball.syncView(snapshot, alpha));
+    }
+
+    /**
+     * Adds up to VIEWS_PER_PULSE of the views waiting in the queue to the ball pane. Called once a pulse by render, or
+     * directly by a client that moves the views itself.
+     */
+    public void addPendingViews() {
+        if (!pendingViews.isEmpty()) {
+            List<Node> views = new ArrayList<>(Math.min(VIEWS_PER_PULSE, pendingViews.size()));
+            while (views.size() < VIEWS_PER_PULSE && !pendingViews.isEmpty()) {
+                views.add(pendingViews.poll());
+            }
+            ballPane.getChildren().addAll(views);
+        }
+    }
+}
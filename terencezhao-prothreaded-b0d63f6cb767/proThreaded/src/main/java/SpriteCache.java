@@ -0,0 +1,93 @@
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The SpriteCache holds pre-rendered images of balls so that drawing a ball, blurred or not, is a single image copy
+ * rather than a fill, a stroke and, for blurred balls, a filter pass over the pixels.
+ * <p>
+ * Sprites are keyed by the color of the ball, its radius rounded to the nearest half pixel and whether it is blurred.
+ * The cache holds at most a fixed number of sprites. Once it is full, the sprite that has gone unused the longest is
+ * evicted, so a long run with many different sizes and colors cannot grow it without bound.
+ * Sprites are rendered with a snapshot, so the cache must only be used on the JavaFX application thread.
+ */
+public class SpriteCache {
+
+    private static final double RADIUS_STEP = 0.5;
+    private static final double STROKE_WIDTH = 2;
+    private static final double BLUR_PADDING = 15;
+
+    private final Map<Long, Image> sprites;
+    private final SnapshotParameters snapshotParameters = new SnapshotParameters();
+
+    /**
+     * @param maxSprites is the number of sprites the cache holds before it starts evicting the least recently used one
+     */
+    public SpriteCache(int maxSprites) {
+        this.sprites = new LinkedHashMap<Long, Image>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Image> eldest) {
+                return size() > maxSprites;
+            }
+        };
+        snapshotParameters.setFill(Color.TRANSPARENT);
+    }
+
+    /**
+     * Returns the sprite for a ball of the given color, radius and blur, rendering it first if it is not cached.
+     * The ball is centered in the sprite, so the sprite should be drawn with its center on the center of the ball.
+     *
+     * @param color   is the fill color of the ball
+     * @param radius  is the radius of the ball
+     * @param blurred is whether the ball has hit a wall and is drawn blurred
+     * @return the image of the ball
+     */
+    public Image get(Color color, double radius, boolean blurred) {
+        int radiusSteps = (int) Math.round(radius / RADIUS_STEP);
+        long key = ((long) toArgb(color) << 32) | ((long) radiusSteps << 1) | (blurred ? 1 : 0);
+        Image sprite = sprites.get(key);
+        if (sprite == null) {
+            sprite = render(color, radiusSteps * RADIUS_STEP, blurred);
+            sprites.put(key, sprite);
+        }
+        return sprite;
+    }
+
+    public int size() {
+        return sprites.size();
+    }
+
+    /**
+     * Draws a single ball filled with its color, with a 2 pixel black stroke outside the ball and, if blurred, the box
+     * blur a ball gets after hitting a wall. The sprite is padded so the blur is not clipped at its edges.
+     */
+    private Image render(Color color, double radius, boolean blurred) {
+        double padding = STROKE_WIDTH + (blurred ? BLUR_PADDING : 1);
+        double size = Math.ceil(2 * (radius + padding));
+        double center = size / 2;
+        Canvas canvas = new Canvas(size, size);
+        GraphicsContext graphics = canvas.getGraphicsContext2D();
+        if (blurred) {
+            graphics.setEffect(Ball.WALL_BLUR);
+        }
+        double outlineRadius = radius + STROKE_WIDTH / 2;
+        graphics.setFill(color);
+        graphics.fillOval(center - radius, center - radius, 2 * radius, 2 * radius);
+        graphics.setStroke(Color.BLACK);
+        graphics.setLineWidth(STROKE_WIDTH);
+        graphics.strokeOval(center - outlineRadius, center - outlineRadius, 2 * outlineRadius, 2 * outlineRadius);
+        return canvas.snapshot(snapshotParameters, null);
+    }
+
+    private static int toArgb(Color color) {
+        return ((int) Math.round(color.getOpacity() * 255) << 24)
+                | ((int) Math.round(color.getRed() * 255) << 16)
+                | ((int) Math.round(color.getGreen() * 255) << 8)
+                | (int) Math.round(color.getBlue() * 255);
+    }
+}
@@ -0,0 +1,70 @@
+package edu.uchicago.zhao.sim.bench;
+
+import edu.uchicago.zhao.sim.BallStore;
+import edu.uchicago.zhao.sim.Simulation;
+
+import java.util.Random;
+
+import static java.lang.Math.*;
+
+/**
+ * The BenchmarkScene fills a simulation with the same set of balls for every benchmark, so that results from different
+ * benchmarks and engines are measured on the same scene.
+ * <p>
+ * The balls are scattered at random over a square world whose size grows with the ball count, so that the balls always
+ * cover the same fraction of it and the number of contacts per ball stays the same from 100 to a million balls.
+ * A fixed seed is used so every fork starts from the same set of balls.
+ */
+public class BenchmarkScene {
+
+    private static final double MIN_RADIUS = 2;
+    private static final double MAX_RADIUS = 10;
+
+    /**
+     * The fraction of the world covered by balls.
+     */
+    private static final double COVERAGE = 0.2;
+    private static final double BALL_DENSITY = 1;
+    private static final long SEED = 42;
+
+    /**
+     * The number of colors in the application's palette, which the balls take turns in as they do there.
+     */
+    private static final int COLOR_COUNT = 7;
+
+    /**
+     * Adds the balls to the simulation's store and sets the size of its world.
+     *
+     * @param simulation         is the simulation to fill, which should be empty
+     * @param ballCount          is the number of balls to add
+     * @param radiusDistribution is how the radii of the balls are spread
+     * @param speedRange         is the range the speed of each ball is drawn from, in pixels per second, written as min-max
+     */
+    public static void populate(Simulation simulation, int ballCount, RadiusDistribution radiusDistribution, String speedRange) {
+        String[] speeds = speedRange.split("-");
+        double minSpeed = Double.parseDouble(speeds[0]);
+        double maxSpeed = Double.parseDouble(speeds[1]);
+        Random random = new Random(SEED);
+        double[] radii = new double[ballCount];
+        double ballArea = 0;
+        for (int i = 0; i < ballCount; i++) {
+            radii[i] = radiusDistribution.next(random, MIN_RADIUS, MAX_RADIUS);
+            ballArea += PI * radii[i] * radii[i];
+        }
+        double width = sqrt(ballArea / COVERAGE);
+        double height = width;
+
+        simulation.setBounds(width, height);
+        BallStore store = simulation.getStore();
+        for (int i = 0; i < ballCount; i++) {
+            double radius = radii[i];
+            double x = radius + (width - 2 * radius) * random.nextDouble();
+            double y = radius + (height - 2 * radius) * random.nextDouble();
+            double speed = minSpeed + (maxSpeed - minSpeed) * random.nextDouble();
+            double angle = 2 * PI * random.nextDouble();
+            double mass = BALL_DENSITY * (4.0 / 3.0) * PI * pow(radius, 3);
+            store.add(x, y, radius, speed * cos(angle), speed * sin(angle), mass, i % COLOR_COUNT);
+        }
+        simulation.getChanges().ensureCapacity(ballCount);
+    }
+}
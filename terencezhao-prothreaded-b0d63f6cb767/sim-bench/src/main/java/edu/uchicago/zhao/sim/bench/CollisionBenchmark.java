@@ -0,0 +1,131 @@
+package edu.uchicago.zhao.sim.bench;
+
+import edu.uchicago.zhao.sim.BallStore;
+import edu.uchicago.zhao.sim.BroadPhaseType;
+import edu.uchicago.zhao.sim.ChangeBuffer;
+import edu.uchicago.zhao.sim.CollisionHandler;
+import edu.uchicago.zhao.sim.Simulation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CollisionBenchmark measures one frame of the simulation and each of its parts on its own: the wall pass, the
+ * whole collision step (walls, broad phase and contact resolution) and the integration that moves the balls.
+ * Every benchmark operation is a single frame, so the scores are in nanoseconds per frame, and running with the gc
+ * profiler (-prof gc) reports the bytes allocated per frame as gc.alloc.rate.norm.
+ * <p>
+ * The scene is built by BenchmarkScene. The state is left to evolve from one frame to the next, as it does in the
+ * application, and is rebuilt for every trial.
+ * <p>
+ * The parallel passes of the collision step run on the CollisionScheduler of CollisionHandler, which is replaced by
+ * one of the requested number of threads and split threshold for every trial. Every pass that is split allocates its
+ * tasks, which show up in the allocation figures of every benchmark but integration.
+ * <p>
+ * Nothing here touches JavaFX, so the benchmarks run on a headless machine:
+ * <pre>
+ * mvn -pl sim-core,sim-bench -am package
+ * java -jar sim-bench/target/benchmarks.jar CollisionBenchmark -p ballCount=10000 -p broadPhase=SWEEP_AND_PRUNE -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionBenchmark {
+
+    /**
+     * The length of a frame at 60 frames per second.
+     */
+    private static final double FRAME_SECONDS = 1.0 / 60;
+
+    @Param({"100", "1000", "10000", "100000", "1000000"})
+    public int ballCount;
+
+    @Param({"UNIFORM", "EQUAL", "MIXED"})
+    public RadiusDistribution radiusDistribution;
+
+    /**
+     * The range the speed of each ball is drawn from, in pixels per second, written as min-max.
+     */
+    @Param({"50-500"})
+    public String speedRange;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    /**
+     * The largest number of balls, pairs or contacts the scheduler runs as a single task.
+     */
+    @Param({"1024"})
+    public int splitThreshold;
+
+    @Param({"SPATIAL_HASH"})
+    public BroadPhaseType broadPhase;
+
+    private Simulation simulation;
+    private BallStore store;
+    private ChangeBuffer changes;
+    private double width;
+    private double height;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        simulation = new Simulation();
+        BenchmarkScene.populate(simulation, ballCount, radiusDistribution, speedRange);
+        store = simulation.getStore();
+        changes = simulation.getChanges();
+        width = simulation.getWidth();
+        height = simulation.getHeight();
+        CollisionHandler.setBroadPhaseType(broadPhase);
+        CollisionHandler.setParallelism(threads);
+        CollisionHandler.getScheduler().setSplitThreshold(splitThreshold);
+    }
+
+    /**
+     * A whole frame as the application runs it: the simulation step followed by draining the change buffer.
+     */
+    @Benchmark
+    public void frame() {
+        simulation.step(FRAME_SECONDS);
+        changes.apply(store, (ball, colorIndex, blurred) -> { });
+    }
+
+    /**
+     * Wall collisions, the broad phase and contact resolution, without moving the balls.
+     */
+    @Benchmark
+    public void collisionStep() {
+        CollisionHandler.handleCollisions(store, changes, width, height, FRAME_SECONDS);
+    }
+
+    /**
+     * Only the wall pass of the collision step.
+     */
+    @Benchmark
+    public long wallCollisions() {
+        return CollisionHandler.handleWallCollisions(store, changes, width, height, FRAME_SECONDS);
+    }
+
+    /**
+     * Only moving every ball along its velocity. This is a single loop on the calling thread, so the thread count
+     * does not apply to it.
+     */
+    @Benchmark
+    public void integration() {
+        store.advance(FRAME_SECONDS);
+    }
+}
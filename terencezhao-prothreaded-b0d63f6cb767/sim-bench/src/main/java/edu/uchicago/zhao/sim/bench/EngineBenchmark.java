@@ -0,0 +1,111 @@
+package edu.uchicago.zhao.sim.bench;
+
+import edu.uchicago.zhao.sim.BallActorStepper;
+import edu.uchicago.zhao.sim.CollisionHandler;
+import edu.uchicago.zhao.sim.EventDrivenStepper;
+import edu.uchicago.zhao.sim.PartitionedStepper;
+import edu.uchicago.zhao.sim.Simulation;
+import edu.uchicago.zhao.sim.Stepper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The EngineBenchmark compares the threading models of the simulation on the same scene, one simulation step per
+ * benchmark operation:
+ * <ul>
+ * <li>DATA_PARALLEL is Simulation.step, whose parallel passes run on a CollisionScheduler of the given number of
+ * threads,</li>
+ * <li>PARTITIONED is a PartitionedStepper with the given number of worker threads,</li>
+ * <li>ACTORS is a BallActorStepper with one virtual thread per ball. Virtual threads always run on the JDK's own
+ * scheduler, so the thread count does not apply to it; run with -jvmArgsAppend
+ * -Djdk.virtualThreadScheduler.parallelism=N to size that scheduler instead.</li>
+ * <li>EVENTS is an EventDrivenStepper, which runs on the benchmark thread alone, so the thread count does not apply
+ * to it either.</li>
+ * </ul>
+ * <pre>
+ * java -jar sim-bench/target/benchmarks.jar EngineBenchmark -p ballCount=100000
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+
+    public enum Engine {
+        DATA_PARALLEL, PARTITIONED, ACTORS, EVENTS
+    }
+
+    /**
+     * The length of a frame at 60 frames per second.
+     */
+    private static final double FRAME_SECONDS = 1.0 / 60;
+
+    @Param({"1000", "10000", "100000"})
+    public int ballCount;
+
+    @Param({"DATA_PARALLEL", "PARTITIONED", "ACTORS", "EVENTS"})
+    public Engine engine;
+
+    @Param({"UNIFORM"})
+    public RadiusDistribution radiusDistribution;
+
+    @Param({"50-500"})
+    public String speedRange;
+
+    @Param({"4"})
+    public int threads;
+
+    private Simulation simulation;
+    private Stepper stepper;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        simulation = new Simulation();
+        BenchmarkScene.populate(simulation, ballCount, radiusDistribution, speedRange);
+        switch (engine) {
+            case DATA_PARALLEL:
+                CollisionHandler.setParallelism(threads);
+                break;
+            case PARTITIONED:
+                stepper = new PartitionedStepper(simulation, threads);
+                break;
+            case EVENTS:
+                stepper = new EventDrivenStepper(simulation);
+                break;
+            default:
+                stepper = new BallActorStepper(simulation);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (stepper != null) {
+            stepper.shutdown();
+        }
+    }
+
+    @Benchmark
+    public void step() {
+        if (stepper != null) {
+            stepper.step(FRAME_SECONDS);
+        } else {
+            simulation.step(FRAME_SECONDS);
+        }
+    }
+}
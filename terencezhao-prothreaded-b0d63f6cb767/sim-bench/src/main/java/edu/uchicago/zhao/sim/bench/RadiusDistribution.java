@@ -0,0 +1,46 @@
+package edu.uchicago.zhao.sim.bench;
+
+import java.util.Random;
+
+/**
+ * The RadiusDistribution decides how the radii of the balls in a benchmark are spread between the smallest and the
+ * largest radius. The broad phases behave very differently depending on it: a grid sized for the largest ball does
+ * much more work when most balls are small, and a quadtree pushes large balls up towards the root.
+ */
+public enum RadiusDistribution {
+
+    /**
+     * Every ball has the largest radius.
+     */
+    EQUAL {
+        @Override
+        public double next(Random random, double minRadius, double maxRadius) {
+            return maxRadius;
+        }
+    },
+
+    /**
+     * Radii are spread evenly between the smallest and the largest radius, as in the application.
+     */
+    UNIFORM {
+        @Override
+        public double next(Random random, double minRadius, double maxRadius) {
+            return minRadius + (maxRadius - minRadius) * random.nextDouble();
+        }
+    },
+
+    /**
+     * Most balls have the smallest radius and one in a hundred has the largest.
+     */
+    MIXED {
+        @Override
+        public double next(Random random, double minRadius, double maxRadius) {
+            return random.nextInt(100) == 0 ? maxRadius : minRadius;
+        }
+    };
+
+    /**
+     * @return the radius of the next ball
+     */
+    public abstract double next(Random random, double minRadius, double maxRadius);
+}
@@ -0,0 +1,17 @@
+package edu.uchicago.zhao.sim;
+
+/**
+ * The AllPairs broad phase does not prune anything. It reports every pair of balls, which makes it the slowest broad
+ * phase but also a useful baseline to compare the others against.
+ */
+public class AllPairs implements BroadPhase {
+
+    public void findPairs(BallStore store, double worldWidth, double worldHeight, double seconds, PairList pairs) {
+        int ballCount = store.size();
+        for (int i = 0; i < ballCount; i++) {
+            for (int j = i + 1; j < ballCount; j++) {
+                pairs.add(i, j);
+            }
+        }
+    }
+}
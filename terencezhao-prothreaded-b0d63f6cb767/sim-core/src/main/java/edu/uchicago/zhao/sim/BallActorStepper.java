@@ -0,0 +1,343 @@
+package edu.uchicago.zhao.sim;
+
+import java.util.Arrays;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The BallActorStepper runs the simulation the way the original BallRunnable did, with one thread per ball that looks
+ * after its own ball, but uses a virtual thread for each ball so that it scales to a hundred thousand balls instead
+ * of a few hundred. Every ball thread only ever writes its own ball, and all of them are kept in lockstep by a frame
+ * barrier, so each step is made of the same phases as a step on the data-parallel engine:
+ * <ol>
+ * <li>every ball bounces off the walls it is touching,</li>
+ * <li>the calling thread runs the broad phase, keeps the pairs that touch during the step, splits them into
+ * ContactBatches and hands every ball the list of its contacts in batch order,</li>
+ * <li>the contacts are resolved one batch at a time. No ball appears twice in a batch, so each ball has at most one
+ * contact in it, and the threads of both its balls work out the same collision from the same state, each keeping the
+ * result for its own ball. A batch takes two phases, one in which both threads read the pair and one in which they
+ * write their results, since a thread writing its ball while the other is still reading it would tear the pair,</li>
+ * <li>every ball moves itself along its velocity.</li>
+ * </ol>
+ * The collision is worked out exactly as CollisionHandler.ballCollision works it out, with the first ball of the pair
+ * as its first ball, and the batches are built from the same pairs in the same order, so every ball sees the same
+ * collisions in the same order as on the data-parallel engine. The results are therefore bit for bit those of
+ * Simulation.step, energy and momentum are conserved in the same way, and nothing depends on the order in which the
+ * ball threads run.
+ * <p>
+ * A step is split into sub-steps exactly as Simulation.step splits it, and the ball threads run all the phases once
+ * for every sub-step.
+ * <p>
+ * A single Phaser can only hold 65535 parties, and a hundred thousand threads arriving at the same one would fight over
+ * it, so the ball threads are spread over a tree of Phasers: each leaf holds up to LEAF_SIZE balls and the root holds
+ * the leaves and the calling thread. A phase only advances once every ball in every leaf has arrived.
+ * <p>
+ * The stepper is built for the balls in the store when it is created. A new one has to be created whenever the balls
+ * are replaced.
+ */
+public class BallActorStepper implements Stepper {
+
+    private static final int LEAF_SIZE = 256;
+
+    private final Simulation simulation;
+    private final int ballCount;
+    private final Phaser root = new Phaser(1);
+    private final boolean[] hitWall;
+    private final int[] contactsOfBall;
+    private final boolean[] hasResult;
+    private final double[] resultX;
+    private final double[] resultY;
+    private final double[] resultXVelocity;
+    private final double[] resultYVelocity;
+    private final int[] resultColorIndex;
+    private final int[] contactStart;
+    private int[] contactsInBatchOrder = new int[0];
+    private int[] batchOfEntry = new int[0];
+    private final PairList candidatePairs = new PairList();
+    private final PairList overlappingPairs = new PairList();
+    private final ContactBatches contactBatches = new ContactBatches();
+    private BroadPhaseType broadPhaseType;
+    private BroadPhase broadPhase;
+    private double stepSeconds;
+    private double sweepSeconds;
+    private double width;
+    private double height;
+    private volatile boolean isShutdown;
+
+    /**
+     * Starts one virtual thread for every ball in the simulation's store.
+     *
+     * @param simulation is the simulation to step
+     */
+    public BallActorStepper(Simulation simulation) {
+        this.simulation = simulation;
+        this.ballCount = simulation.getStore().size();
+        this.hitWall = new boolean[ballCount];
+        this.contactsOfBall = new int[ballCount];
+        this.hasResult = new boolean[ballCount];
+        this.resultX = new double[ballCount];
+        this.resultY = new double[ballCount];
+        this.resultXVelocity = new double[ballCount];
+        this.resultYVelocity = new double[ballCount];
+        this.resultColorIndex = new int[ballCount];
+        this.contactStart = new int[ballCount + 1];
+        Phaser[] leaves = new Phaser[(ballCount + LEAF_SIZE - 1) / LEAF_SIZE];
+        for (int leaf = 0; leaf < leaves.length; leaf++) {
+            leaves[leaf] = new Phaser(root, Math.min(LEAF_SIZE, ballCount - leaf * LEAF_SIZE));
+        }
+        // Every party is registered before any thread starts, since a Phaser blocks registration while it advances.
+        ThreadFactory factory = Thread.ofVirtual().name("ball-", 0).factory();
+        for (int ball = 0; ball < ballCount; ball++) {
+            final Phaser barrier = leaves[ball / LEAF_SIZE];
+            final int index = ball;
+            factory.newThread(() -> run(index, barrier)).start();
+        }
+    }
+
+    /**
+     * Advances the simulation by the given amount of time and returns once every ball has finished the step.
+     */
+    public void step(double seconds) {
+        if (isShutdown) {
+            throw new IllegalStateException("The stepper has been shut down");
+        }
+        StepEvent event = new StepEvent();
+        event.begin();
+        simulation.prepareStep();
+        int substeps = simulation.substepsFor(seconds);
+        stepSeconds = seconds / substeps;
+        sweepSeconds = CollisionHandler.sweepSeconds(stepSeconds);
+        width = simulation.getStepWidth();
+        height = simulation.getStepHeight();
+        BroadPhaseStats stats = BroadPhaseStats.EMPTY;
+        long wallHits = 0;
+        for (int substep = 0; substep < substeps; substep++) {
+            stats = stats.plus(substep());
+            for (int ball = 0; ball < ballCount; ball++) {
+                if (hitWall[ball]) {
+                    wallHits++;
+                }
+            }
+        }
+        CollisionHandler.recordStats(stats);
+        event.end();
+        simulation.commitStepEvents(event, stats, wallHits, substeps);
+    }
+
+    /**
+     * Runs the ball threads through one sub-step.
+     *
+     * @return what the broad phase and the contacts of the sub-step counted
+     */
+    private BroadPhaseStats substep() {
+        BallStore store = simulation.getStore();
+        root.arriveAndAwaitAdvance();
+        root.arriveAndAwaitAdvance();
+
+        if (broadPhaseType != CollisionHandler.getBroadPhaseType()) {
+            broadPhaseType = CollisionHandler.getBroadPhaseType();
+            broadPhase = broadPhaseType.create();
+        }
+        candidatePairs.clear();
+        long buildStart = System.nanoTime();
+        broadPhase.findPairs(store, width, height, sweepSeconds, candidatePairs);
+        long buildNanos = System.nanoTime() - buildStart;
+        overlappingPairs.clear();
+        for (int pair = 0; pair < candidatePairs.size(); pair++) {
+            int first = candidatePairs.first(pair);
+            int second = candidatePairs.second(pair);
+            if (CollisionHandler.mayTouch(store, first, second, sweepSeconds)) {
+                overlappingPairs.add(first, second);
+            }
+        }
+        overlappingPairs.sort();
+        contactBatches.build(overlappingPairs, ballCount);
+        buildContactLists();
+        root.arriveAndAwaitAdvance();
+        for (int batch = 0; batch < contactBatches.batchCount(); batch++) {
+            root.arriveAndAwaitAdvance();
+            root.arriveAndAwaitAdvance();
+        }
+        root.arriveAndAwaitAdvance();
+
+        long contacts = 0;
+        for (int ball = 0; ball < ballCount; ball++) {
+            contacts += contactsOfBall[ball];
+        }
+        long sortSwaps = broadPhase instanceof SweepAndPrune ? ((SweepAndPrune) broadPhase).getLastSwapCount() : 0;
+        return new BroadPhaseStats(candidatePairs.size(), contacts, buildNanos, sortSwaps);
+    }
+
+    /**
+     * Lets every ball thread exit.
+     */
+    public void shutdown() {
+        if (!isShutdown) {
+            isShutdown = true;
+            root.arriveAndDeregister();
+        }
+    }
+
+    /**
+     * Gives every ball the list of its contacts in the order of their batches, stored one ball after the other so
+     * that the contacts of ball b are at positions contactStart[b] up to, but not including, contactStart[b + 1], along
+     * with the batch each of them is in.
+     */
+    private void buildContactLists() {
+        int contactCount = overlappingPairs.size();
+        if (contactsInBatchOrder.length < 2 * contactCount) {
+            contactsInBatchOrder = new int[2 * contactCount];
+            batchOfEntry = new int[2 * contactCount];
+        }
+        Arrays.fill(contactStart, 0);
+        for (int contact = 0; contact < contactCount; contact++) {
+            contactStart[overlappingPairs.first(contact) + 1]++;
+            contactStart[overlappingPairs.second(contact) + 1]++;
+        }
+        for (int ball = 0; ball < ballCount; ball++) {
+            contactStart[ball + 1] += contactStart[ball];
+        }
+        for (int batch = 0; batch < contactBatches.batchCount(); batch++) {
+            for (int position = contactBatches.batchStart(batch); position < contactBatches.batchEnd(batch); position++) {
+                int contact = contactBatches.contactAt(position);
+                int first = contactStart[overlappingPairs.first(contact)]++;
+                int second = contactStart[overlappingPairs.second(contact)]++;
+                contactsInBatchOrder[first] = contact;
+                contactsInBatchOrder[second] = contact;
+                batchOfEntry[first] = batch;
+                batchOfEntry[second] = batch;
+            }
+        }
+        for (int ball = ballCount; ball > 0; ball--) {
+            contactStart[ball] = contactStart[ball - 1];
+        }
+        contactStart[0] = 0;
+    }
+
+    /**
+     * The loop each ball thread runs. Every arriveAndAwaitAdvance here is matched by one in substep.
+     */
+    private void run(int ball, Phaser barrier) {
+        BallStore store = simulation.getStore();
+        ChangeBuffer changes = simulation.getChanges();
+        while (true) {
+            barrier.arriveAndAwaitAdvance();
+            if (isShutdown) {
+                barrier.arriveAndDeregister();
+                return;
+            }
+            hitWall[ball] = CollisionHandler.wallCollision(store, ball, changes, width, height, sweepSeconds);
+            barrier.arriveAndAwaitAdvance();
+            barrier.arriveAndAwaitAdvance();
+
+            int entry = contactStart[ball];
+            int entryEnd = contactStart[ball + 1];
+            int contacts = 0;
+            for (int batch = 0; batch < contactBatches.batchCount(); batch++) {
+                boolean isInBatch = entry < entryEnd && batchOfEntry[entry] == batch;
+                if (isInBatch) {
+                    int contact = contactsInBatchOrder[entry++];
+                    int first = overlappingPairs.first(contact);
+                    collide(store, ball, first, overlappingPairs.second(contact));
+                    if (hasResult[ball] && ball == first) {
+                        contacts++;
+                    }
+                }
+                barrier.arriveAndAwaitAdvance();
+                if (isInBatch && hasResult[ball]) {
+                    apply(store, ball, changes);
+                }
+                barrier.arriveAndAwaitAdvance();
+            }
+            contactsOfBall[ball] = contacts;
+
+            store.advance(ball, ball + 1, stepSeconds);
+            barrier.arriveAndAwaitAdvance();
+        }
+    }
+
+    /**
+     * Works out the collision of a pair exactly as CollisionHandler.ballCollision does, with the same operations in the
+     * same order, but only reads the two balls and keeps what the collision does to the given one of them as its
+     * result, to be written by apply once the other ball's thread has read the pair as well.
+     *
+     * @param store  is the store holding the state of every ball
+     * @param ball   is the ball whose result is kept, either ball1 or ball2
+     * @param ball1  is the first ball of the pair
+     * @param ball2  is the second ball of the pair
+     */
+    private void collide(BallStore store, int ball, int ball1, int ball2) {
+        final double xVelocity1 = store.getXVelocity(ball1);
+        final double yVelocity1 = store.getYVelocity(ball1);
+        final double xVelocity2 = store.getXVelocity(ball2);
+        final double yVelocity2 = store.getYVelocity(ball2);
+        final double relativeXVelocity = xVelocity2 - xVelocity1;
+        final double relativeYVelocity = yVelocity2 - yVelocity1;
+        final double timeOfImpact = CollisionHandler.timeOfImpact(store.getX(ball2) - store.getX(ball1),
+                store.getY(ball2) - store.getY(ball1), relativeXVelocity, relativeYVelocity,
+                store.getRadius(ball1) + store.getRadius(ball2), sweepSeconds);
+        final double deltaX = store.getX(ball2) - store.getX(ball1) + relativeXVelocity * Math.max(0, timeOfImpact);
+        final double deltaY = store.getY(ball2) - store.getY(ball1) + relativeYVelocity * Math.max(0, timeOfImpact);
+        boolean isDistanceDecreasing = deltaX * relativeXVelocity + deltaY * relativeYVelocity < 0;
+        hasResult[ball] = timeOfImpact >= 0 && isDistanceDecreasing;
+        if (!hasResult[ball]) {
+            return;
+        }
+        int taker = store.getRadius(ball1) > store.getRadius(ball2) ? ball2 : ball1;
+        int other = ball == ball1 ? ball2 : ball1;
+        resultColorIndex[ball] = ball == taker ? store.getColorIndex(other) : store.getColorIndex(ball);
+
+        final double distance = Math.sqrt(deltaX * deltaX + deltaY * deltaY);
+        final double unitContactX = deltaX / distance;
+        final double unitContactY = deltaY / distance;
+        final double u1 = xVelocity1 * unitContactX + yVelocity1 * unitContactY;
+        final double u2 = xVelocity2 * unitContactX + yVelocity2 * unitContactY;
+        final double mass1 = store.getMass(ball1);
+        final double mass2 = store.getMass(ball2);
+        final double massSum = mass1 + mass2;
+        final double massDiff = mass1 - mass2;
+        double xVelocity;
+        double yVelocity;
+        double newXVelocity;
+        double newYVelocity;
+        if (ball == ball1) {
+            final double v1 = (2 * mass2 * u2 + u1 * massDiff) / massSum;
+            xVelocity = xVelocity1;
+            yVelocity = yVelocity1;
+            newXVelocity = v1 * unitContactX + (xVelocity1 - u1 * unitContactX);
+            newYVelocity = v1 * unitContactY + (yVelocity1 - u1 * unitContactY);
+        } else {
+            final double v2 = (2 * mass1 * u1 - u2 * massDiff) / massSum;
+            xVelocity = xVelocity2;
+            yVelocity = yVelocity2;
+            newXVelocity = v2 * unitContactX + (xVelocity2 - u2 * unitContactX);
+            newYVelocity = v2 * unitContactY + (yVelocity2 - u2 * unitContactY);
+        }
+        resultXVelocity[ball] = newXVelocity;
+        resultYVelocity[ball] = newYVelocity;
+        resultX[ball] = store.getX(ball);
+        resultY[ball] = store.getY(ball);
+        if (timeOfImpact > 0) {
+            resultX[ball] += (xVelocity - newXVelocity) * timeOfImpact;
+            resultY[ball] += (yVelocity - newYVelocity) * timeOfImpact;
+        }
+    }
+
+    /**
+     * Writes the result of the ball's collision in the current batch into the store, recording a change of color.
+     */
+    private void apply(BallStore store, int ball, ChangeBuffer changes) {
+        store.setXVelocity(ball, resultXVelocity[ball]);
+        store.setYVelocity(ball, resultYVelocity[ball]);
+        store.setX(ball, resultX[ball]);
+        store.setY(ball, resultY[ball]);
+        if (resultColorIndex[ball] != store.getColorIndex(ball)) {
+            store.setColorIndex(ball, resultColorIndex[ball]);
+            changes.recordAppearance(ball, resultColorIndex[ball], store.isBlurred(ball));
+        }
+    }
+
+    public int getBallCount() {
+        return ballCount;
+    }
+}
@@ -0,0 +1,383 @@
+package edu.uchicago.zhao.sim;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * The BallStore holds the physical state of every ball in a set of packed primitive arrays, one array per property.
+ * Ball number i has its position at (x[i], y[i]), its velocity at (vx[i], vy[i]) and so on.
+ * Besides the physical properties, the store also tracks the index of each ball's color in the palette and whether
+ * the ball has been blurred by hitting a wall, since collisions change both.
+ * <p>
+ * Keeping the state in plain arrays rather than in JavaFX properties on each Ball means the physics can run over
+ * contiguous memory without going through property getters, and setting a velocity does not fire any invalidation
+ * listeners. The Ball class is reduced to a handle holding the index of its ball in the store along with the view
+ * that represents it on screen.
+ * <p>
+ * Balls can only be appended or cleared all at once, so the index of a ball never changes while it is in the store.
+ * The only exception is the StripWorker, which owns a store that is never drawn and compacts it with move and
+ * truncate as balls leave its strip.
+ */
+public class BallStore {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private double[] x = new double[INITIAL_CAPACITY];
+    private double[] y = new double[INITIAL_CAPACITY];
+    private double[] vx = new double[INITIAL_CAPACITY];
+    private double[] vy = new double[INITIAL_CAPACITY];
+    private double[] radius = new double[INITIAL_CAPACITY];
+    private double[] mass = new double[INITIAL_CAPACITY];
+    private int[] colorIndex = new int[INITIAL_CAPACITY];
+    private boolean[] blurred = new boolean[INITIAL_CAPACITY];
+    private int size;
+    private long generation;
+
+    /**
+     * Appends a ball to the store, growing the arrays if they are full.
+     *
+     * @return the index of the new ball
+     */
+    public int add(double centerX, double centerY, double radius, double xVelocity, double yVelocity, double mass, int colorIndex) {
+        if (size == x.length) {
+            ensureCapacity(x.length * 2);
+        }
+        generation++;
+        x[size] = centerX;
+        y[size] = centerY;
+        vx[size] = xVelocity;
+        vy[size] = yVelocity;
+        this.radius[size] = radius;
+        this.mass[size] = mass;
+        this.colorIndex[size] = colorIndex;
+        blurred[size] = false;
+        return size++;
+    }
+
+    /**
+     * Removes every ball from the store. The arrays are kept so they can be reused by the next set of balls.
+     */
+    public void clear() {
+        size = 0;
+        generation++;
+    }
+
+    /**
+     * Overwrites the ball at one index with the ball at another, leaving the other where it is.
+     *
+     * @param from is the index of the ball to copy
+     * @param to   is the index to copy it to
+     */
+    void move(int from, int to) {
+        x[to] = x[from];
+        y[to] = y[from];
+        vx[to] = vx[from];
+        vy[to] = vy[from];
+        radius[to] = radius[from];
+        mass[to] = mass[from];
+        colorIndex[to] = colorIndex[from];
+        blurred[to] = blurred[from];
+        generation++;
+    }
+
+    /**
+     * Removes every ball from the given index on.
+     *
+     * @param newSize is the number of balls to keep
+     */
+    void truncate(int newSize) {
+        if (newSize < size) {
+            size = newSize;
+            generation++;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > x.length) {
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            vx = Arrays.copyOf(vx, capacity);
+            vy = Arrays.copyOf(vy, capacity);
+            radius = Arrays.copyOf(radius, capacity);
+            mass = Arrays.copyOf(mass, capacity);
+            colorIndex = Arrays.copyOf(colorIndex, capacity);
+            blurred = Arrays.copyOf(blurred, capacity);
+        }
+    }
+
+    /**
+     * The generation changes every time a ball is added, moved or removed, and never otherwise, so comparing it
+     * with an earlier value tells whether the set of balls, and with it their radii and masses, may have changed.
+     *
+     * @return the number of times the set of balls has changed
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Moves every ball along its velocity for the given amount of time.
+     *
+     * @param seconds is the amount of time that has passed
+     */
+    public void advance(double seconds) {
+        advance(0, size, seconds);
+    }
+
+    /**
+     * Moves the balls from index start up to but not including index end along their velocity, so that threads can
+     * each move their own range of balls.
+     *
+     * @param start   is the index of the first ball to move
+     * @param end     is one past the index of the last ball to move
+     * @param seconds is the amount of time that has passed
+     */
+    public void advance(int start, int end, double seconds) {
+        for (int i = start; i < end; i++) {
+            x[i] += seconds * vx[i];
+            y[i] += seconds * vy[i];
+        }
+    }
+
+    /**
+     * @return the radius of the largest ball in the store
+     */
+    public double maxRadius() {
+        double maxRadius = 0;
+        for (int i = 0; i < size; i++) {
+            maxRadius = Math.max(maxRadius, radius[i]);
+        }
+        return maxRadius;
+    }
+
+    /**
+     * @return the radius of the smallest ball in the store, or zero if it is empty
+     */
+    public double minRadius() {
+        double minRadius = size > 0 ? Double.POSITIVE_INFINITY : 0;
+        for (int i = 0; i < size; i++) {
+            minRadius = Math.min(minRadius, radius[i]);
+        }
+        return minRadius;
+    }
+
+    /**
+     * @return the speed of the fastest ball in the store
+     */
+    public double maxSpeed() {
+        double maxSpeedSquared = 0;
+        for (int i = 0; i < size; i++) {
+            maxSpeedSquared = Math.max(maxSpeedSquared, vx[i] * vx[i] + vy[i] * vy[i]);
+        }
+        return Math.sqrt(maxSpeedSquared);
+    }
+
+    /**
+     * A ball can travel at most its speed times the given time, so this is how far from its current center the ball
+     * can reach within that time. A broad phase that treats every ball as a circle of this size finds every pair that
+     * may touch during a step, not only the pairs touching at its start.
+     *
+     * @param ball    is the index of the ball
+     * @param seconds is the length of the step, or zero for just the radius
+     * @return the radius of the ball plus the distance it covers in the given time
+     */
+    public double getReach(int ball, double seconds) {
+        return radius[ball] + seconds * Math.sqrt(vx[ball] * vx[ball] + vy[ball] * vy[ball]);
+    }
+
+    /**
+     * @return the largest reach of any ball in the store within the given time
+     */
+    public double maxReach(double seconds) {
+        double maxReach = 0;
+        for (int i = 0; i < size; i++) {
+            maxReach = Math.max(maxReach, getReach(i, seconds));
+        }
+        return maxReach;
+    }
+
+    /**
+     * Copies the position of every ball into the given arrays, which must hold at least size() elements.
+     *
+     * @param xs is filled with the x coordinate of every ball
+     * @param ys is filled with the y coordinate of every ball
+     */
+    public void copyPositions(double[] xs, double[] ys) {
+        System.arraycopy(x, 0, xs, 0, size);
+        System.arraycopy(y, 0, ys, 0, size);
+    }
+
+    /**
+     * Writes the radius of every ball followed by the mass of every ball to the buffer, as two runs of doubles. These
+     * never change once a ball has been added, so recordings and saved scenes only write them once per set of balls.
+     *
+     * @param buffer is the buffer to write to, advanced past what was written
+     */
+    void writeShapes(ByteBuffer buffer) {
+        writeDoubles(buffer, radius);
+        writeDoubles(buffer, mass);
+    }
+
+    /**
+     * Replaces every ball in the store with the given number of balls, taking their radii and masses from the buffer
+     * in the layout writeShapes wrote them in. The balls are left at rest at the origin, unblurred and with the first
+     * color, until readMotion and readAppearance fill in the rest of their state.
+     *
+     * @param count  is the number of balls
+     * @param buffer is the buffer to read from, advanced past what was read
+     */
+    void readShapes(int count, ByteBuffer buffer) {
+        ensureCapacity(count);
+        size = count;
+        generation++;
+        readDoubles(buffer, radius);
+        readDoubles(buffer, mass);
+        Arrays.fill(x, 0, count, 0);
+        Arrays.fill(y, 0, count, 0);
+        Arrays.fill(vx, 0, count, 0);
+        Arrays.fill(vy, 0, count, 0);
+        Arrays.fill(colorIndex, 0, count, 0);
+        Arrays.fill(blurred, 0, count, false);
+    }
+
+    /**
+     * Writes the x, y, horizontal velocity and vertical velocity of every ball to the buffer, as four runs of doubles.
+     * Each run is a single bulk copy, which for a buffer in the native byte order is a plain memory copy.
+     *
+     * @param buffer is the buffer to write to, advanced past what was written
+     */
+    void writeMotion(ByteBuffer buffer) {
+        writeDoubles(buffer, x);
+        writeDoubles(buffer, y);
+        writeDoubles(buffer, vx);
+        writeDoubles(buffer, vy);
+    }
+
+    /**
+     * Reads the positions and velocities of every ball in the layout writeMotion wrote them in.
+     *
+     * @param buffer is the buffer to read from, advanced past what was read
+     */
+    void readMotion(ByteBuffer buffer) {
+        readDoubles(buffer, x);
+        readDoubles(buffer, y);
+        readDoubles(buffer, vx);
+        readDoubles(buffer, vy);
+    }
+
+    /**
+     * Writes the color and blur of every ball to the buffer as one int per ball, holding the color index shifted up by
+     * one with the blur in the lowest bit, the same packing the ChangeBuffer uses.
+     *
+     * @param buffer is the buffer to write to, advanced past what was written
+     */
+    void writeAppearance(ByteBuffer buffer) {
+        IntBuffer ints = buffer.asIntBuffer();
+        for (int i = 0; i < size; i++) {
+            ints.put((colorIndex[i] << 1) | (blurred[i] ? 1 : 0));
+        }
+        buffer.position(buffer.position() + size * Integer.BYTES);
+    }
+
+    /**
+     * Reads the color and blur of every ball in the layout writeAppearance wrote them in. Every ball whose color or
+     * blur differs from what the store held is recorded in the given ChangeBuffer, so that its view is updated.
+     *
+     * @param buffer  is the buffer to read from, advanced past what was read
+     * @param changes is the buffer to record the changed balls in, or null if nobody needs to be told
+     */
+    void readAppearance(ByteBuffer buffer, ChangeBuffer changes) {
+        IntBuffer ints = buffer.asIntBuffer();
+        for (int i = 0; i < size; i++) {
+            int state = ints.get();
+            int newColorIndex = state >> 1;
+            boolean isBlurred = (state & 1) != 0;
+            if (newColorIndex != colorIndex[i] || isBlurred != blurred[i]) {
+                colorIndex[i] = newColorIndex;
+                blurred[i] = isBlurred;
+                if (changes != null) {
+                    changes.recordAppearance(i, newColorIndex, isBlurred);
+                }
+            }
+        }
+        buffer.position(buffer.position() + size * Integer.BYTES);
+    }
+
+    private void writeDoubles(ByteBuffer buffer, double[] values) {
+        DoubleBuffer doubles = buffer.asDoubleBuffer();
+        doubles.put(values, 0, size);
+        buffer.position(buffer.position() + size * Double.BYTES);
+    }
+
+    private void readDoubles(ByteBuffer buffer, double[] values) {
+        DoubleBuffer doubles = buffer.asDoubleBuffer();
+        doubles.get(values, 0, size);
+        buffer.position(buffer.position() + size * Double.BYTES);
+    }
+
+    /**
+     * Below are simple getters and setters for the state of the ball at the given index.
+     */
+
+    public double getX(int ball) {
+        return x[ball];
+    }
+
+    public void setX(int ball, double centerX) {
+        x[ball] = centerX;
+    }
+
+    public double getY(int ball) {
+        return y[ball];
+    }
+
+    public void setY(int ball, double centerY) {
+        y[ball] = centerY;
+    }
+
+    public double getXVelocity(int ball) {
+        return vx[ball];
+    }
+
+    public void setXVelocity(int ball, double xVelocity) {
+        vx[ball] = xVelocity;
+    }
+
+    public double getYVelocity(int ball) {
+        return vy[ball];
+    }
+
+    public void setYVelocity(int ball, double yVelocity) {
+        vy[ball] = yVelocity;
+    }
+
+    public double getRadius(int ball) {
+        return radius[ball];
+    }
+
+    public double getMass(int ball) {
+        return mass[ball];
+    }
+
+    public int getColorIndex(int ball) {
+        return colorIndex[ball];
+    }
+
+    public void setColorIndex(int ball, int colorIndex) {
+        this.colorIndex[ball] = colorIndex;
+    }
+
+    public boolean isBlurred(int ball) {
+        return blurred[ball];
+    }
+
+    public void setBlurred(int ball, boolean blurred) {
+        this.blurred[ball] = blurred;
+    }
+}
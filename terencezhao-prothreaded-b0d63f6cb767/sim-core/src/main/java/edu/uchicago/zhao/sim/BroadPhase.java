@@ -0,0 +1,24 @@
+package edu.uchicago.zhao.sim;
+
+/**
+ * A BroadPhase quickly narrows down which pairs of balls are close enough to possibly be colliding, so that only
+ * those pairs are handed to the more expensive narrow phase collision check.
+ * Implementations are free to keep state between frames, so a single instance must only be used by one thread at a
+ * time and always with the same store of balls.
+ */
+public interface BroadPhase {
+
+    /**
+     * Adds every pair of balls that may be colliding within the given time to the given pair list. Each unordered pair
+     * must be added at most once, with the lower ball index first. Reporting pairs that turn out not to collide is
+     * allowed, but missing a pair that does collide is not. Treating every ball as a circle the size of its reach,
+     * BallStore.getReach, is enough to find every pair that may meet as the balls move along their velocities.
+     *
+     * @param store       is the store of balls to search for pairs
+     * @param worldWidth  is the width of the pane the balls bounce in
+     * @param worldHeight is the height of the pane the balls bounce in
+     * @param seconds     is the length of the step, or zero to only find the pairs touching now
+     * @param pairs       is the list the candidate pairs will be appended to
+     */
+    void findPairs(BallStore store, double worldWidth, double worldHeight, double seconds, PairList pairs);
+}
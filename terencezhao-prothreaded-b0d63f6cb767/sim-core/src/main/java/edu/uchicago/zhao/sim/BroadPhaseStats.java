@@ -0,0 +1,63 @@
+package edu.uchicago.zhao.sim;
+
+/**
+ * The BroadPhaseStats record how efficient the broad phase was on a single frame, so that different broad phases
+ * can be compared on the same scene.
+ * The candidate pair count is how many pairs the broad phase handed to the narrow phase, the contact count is how many
+ * of those pairs actually collided, and the build time is how long the broad phase took to find the candidates.
+ * Broad phases that repair a sorted order between frames also record how many swaps the repair needed.
+ */
+public class BroadPhaseStats {
+
+    public static final BroadPhaseStats EMPTY = new BroadPhaseStats(0, 0, 0, 0);
+
+    private final int candidatePairs;
+    private final long contacts;
+    private final long buildNanos;
+    private final long sortSwaps;
+
+    public BroadPhaseStats(int candidatePairs, long contacts, long buildNanos, long sortSwaps) {
+        this.candidatePairs = candidatePairs;
+        this.contacts = contacts;
+        this.buildNanos = buildNanos;
+        this.sortSwaps = sortSwaps;
+    }
+
+    /**
+     * Adds up the statistics of two passes, such as the sub-steps of a single step. The build times are added as well,
+     * so the result holds the total time spent in the broad phase.
+     *
+     * @param other is the statistics of the other pass
+     * @return the statistics of both passes together
+     */
+    public BroadPhaseStats plus(BroadPhaseStats other) {
+        return new BroadPhaseStats(candidatePairs + other.candidatePairs, contacts + other.contacts,
+                buildNanos + other.buildNanos, sortSwaps + other.sortSwaps);
+    }
+
+    /**
+     * Below are simple getters for the recorded values.
+     */
+
+    public int getCandidatePairs() {
+        return candidatePairs;
+    }
+
+    public long getContacts() {
+        return contacts;
+    }
+
+    public long getBuildNanos() {
+        return buildNanos;
+    }
+
+    public long getSortSwaps() {
+        return sortSwaps;
+    }
+
+    @Override
+    public String toString() {
+        String stats = String.format("Candidates %d  Contacts %d  Build %.2f ms", candidatePairs, contacts, buildNanos / 1e6);
+        return sortSwaps > 0 ? stats + "  Swaps " + sortSwaps : stats;
+    }
+}
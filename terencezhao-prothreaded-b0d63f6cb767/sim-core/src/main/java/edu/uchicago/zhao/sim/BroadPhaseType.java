@@ -0,0 +1,32 @@
+package edu.uchicago.zhao.sim;
+
+import java.util.function.Supplier;
+
+/**
+ * The BroadPhaseType lists the broad phases that can be selected while the simulation is running.
+ * Since broad phases keep state between frames and are not thread safe, each type acts as a factory so that every
+ * thread doing collision detection can create its own instance of the selected broad phase.
+ */
+public enum BroadPhaseType {
+    ALL_PAIRS("All Pairs", AllPairs::new),
+    SPATIAL_HASH("Spatial Hash", SpatialHashGrid::new),
+    SWEEP_AND_PRUNE("Sweep and Prune", SweepAndPrune::new),
+    LOOSE_QUADTREE("Loose Quadtree", LooseQuadtree::new);
+
+    private final String displayName;
+    private final Supplier<BroadPhase> factory;
+
+    BroadPhaseType(String displayName, Supplier<BroadPhase> factory) {
+        this.displayName = displayName;
+        this.factory = factory;
+    }
+
+    public BroadPhase create() {
+        return factory.get();
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -0,0 +1,83 @@
+package edu.uchicago.zhao.sim;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The ChangeBuffer collects the changes of color and blur the physics wants shown on the JavaFX application thread
+ * during a frame, and applies all of them in a single pass once per pulse.
+ * <p>
+ * Posting a Platform.runLater for every color change and blur floods the event queue when many balls collide at once,
+ * for example right after they are all spawned on the same point. Instead, the buffer keeps one slot per ball in an
+ * atomic array. Recording a change just overwrites the ball's slot, so however many times a ball changes during a
+ * frame, only its latest color and blur are applied. Recording never locks and never allocates, so it is safe to call
+ * from any number of threads, including while the buffer is being applied.
+ */
+public class ChangeBuffer {
+
+    /**
+     * An AppearanceListener is told the latest color and blur of every ball whose appearance changed when the buffer
+     * is applied, so that it can update whatever draws the ball.
+     */
+    public interface AppearanceListener {
+        void appearanceChanged(int ball, int colorIndex, boolean blurred);
+    }
+
+    private volatile AtomicIntegerArray appearance = new AtomicIntegerArray(0);
+
+    /**
+     * Makes room for the given number of balls. Growing the buffer discards any changes that have not been applied,
+     * so this should only be called between frames, for example when a new set of balls has been created.
+     *
+     * @param ballCount is the number of balls the buffer must hold
+     */
+    public void ensureCapacity(int ballCount) {
+        if (appearance.length() < ballCount) {
+            appearance = new AtomicIntegerArray(ballCount);
+        }
+    }
+
+    /**
+     * Throws away every change that has not been applied yet, for example because the balls it was recorded for have
+     * just been replaced by a new set of balls.
+     */
+    public void clear() {
+        for (int i = 0; i < appearance.length(); i++) {
+            appearance.set(i, 0);
+        }
+    }
+
+    /**
+     * Records the color and blur the view of a ball should have. Zero is kept to mean "unchanged", so the state is
+     * stored shifted up by one.
+     *
+     * @param ball       is the index of the ball
+     * @param colorIndex is the index in the palette of the ball's color
+     * @param blurred    is whether the ball should be drawn blurred
+     */
+    public void recordAppearance(int ball, int colorIndex, boolean blurred) {
+        AtomicIntegerArray slots = appearance;
+        if (ball < slots.length()) {
+            slots.set(ball, ((colorIndex << 1) | (blurred ? 1 : 0)) + 1);
+        }
+    }
+
+    /**
+     * Applies every recorded change and clears it from the buffer, handing the colors and blurs to the listener. In the
+     * JavaFX application this is called on the JavaFX application thread, with a listener that updates the views of
+     * the balls. The store is only asked for its size and never written, so applying the buffer does not need to hold
+     * off the simulation thread.
+     *
+     * @param store    is the store holding the state of every ball
+     * @param listener is told about every ball whose color or blur changed
+     */
+    public void apply(BallStore store, AppearanceListener listener) {
+        AtomicIntegerArray slots = appearance;
+        int ballCount = Math.min(store.size(), slots.length());
+        for (int i = 0; i < ballCount; i++) {
+            if (slots.get(i) != 0) {
+                int state = slots.getAndSet(i, 0) - 1;
+                listener.appearanceChanged(i, state >> 1, (state & 1) != 0);
+            }
+        }
+    }
+}
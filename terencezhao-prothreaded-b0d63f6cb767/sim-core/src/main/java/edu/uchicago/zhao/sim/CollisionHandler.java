@@ -0,0 +1,399 @@
+package edu.uchicago.zhao.sim;
+
+import static java.lang.Math.sqrt;
+
+/**
+ * Created by teren on 8/9/2016.
+ * SOURCE: https://gist.github.com/james-d/8327842#file-animationtimertest-java
+ * The CollisionHandler detects and handles collisions of balls against walls and other balls.
+ * <p>
+ * Collisions are detected continuously by default. Rather than only checking whether two balls, or a ball and a wall,
+ * are touching at the start of a step, every check works out whether they will touch at any time during the step, by
+ * solving for the time of impact of the two circles moving along their velocities. A collision found at time t into
+ * the step changes the velocities as usual, and also moves each ball by (old velocity - new velocity) * t. The ball
+ * then reaches the point of impact at time t on its new velocity, so after the step has moved every ball along its
+ * velocity, it ends up where it would have after bouncing at exactly the moment of impact. Small fast balls can
+ * therefore no longer pass through each other or through a wall within a single step, and long steps stay accurate.
+ * With continuous detection turned off, or for a step of zero length, every check falls back to whether the balls are
+ * touching now.
+ */
+public class CollisionHandler {
+
+    private static volatile BroadPhaseType broadPhaseType = BroadPhaseType.SPATIAL_HASH;
+    private static volatile boolean isContinuous = true;
+    private static volatile BroadPhaseStats lastStats = BroadPhaseStats.EMPTY;
+    private static volatile long lastWallHits;
+    private static volatile CollisionScheduler scheduler = new CollisionScheduler(Runtime.getRuntime().availableProcessors());
+    private static BroadPhase broadPhase = broadPhaseType.create();
+    private static BroadPhaseType createdBroadPhaseType = broadPhaseType;
+    private static final PairList candidatePairs = new PairList();
+    private static final PairList overlappingPairs = new PairList();
+    private static final ContactBatches contactBatches = new ContactBatches();
+    private static boolean[] isOverlapping = new boolean[0];
+
+    /**
+     * Handles ball and wall collisions for every ball in the store over a step of the given length.
+     * The balls are first run through the selected broad phase, which finds the pairs of balls that are close enough to
+     * possibly collide during the step, and only those pairs are checked for a collision. The wall and ball collision
+     * checks themselves are run in parallel by the CollisionScheduler. How many candidate pairs the broad phase found,
+     * how many of them were actual contacts and how long the broad phase took are recorded in the frame's statistics,
+     * and the time taken by the wall pass, the broad phase and the contacts is recorded in the FrameTimings.
+     * <p>
+     * Every unordered pair is resolved exactly once and the results do not depend on how the threads are scheduled. The
+     * candidate pairs are first tested for whether they touch during the step in parallel, which only reads the state
+     * of the balls. The touching pairs are then split into ContactBatches in which no ball appears twice, and the
+     * batches are resolved one after the other, each in parallel. Since no two threads ever write the same ball and
+     * every ball sees its contacts in the same order as in a serial run, the results are bit for bit identical to
+     * resolving the pairs one by one. The touching pairs are sorted by their balls before they are batched, so the
+     * results do not depend on the order in which the broad phase happened to find them either.
+     * <p>
+     * The physics only reads and writes the arrays of the store, never the scene graph, so it may run on any thread.
+     * Changes of color and blur are made in the store and recorded in the change buffer, which applies them to the
+     * views once per pulse on the JavaFX application thread.
+     *
+     * @param store   is the store holding the state of every ball
+     * @param changes is the buffer the color and blur changes are recorded in
+     * @param width   is the width of the world whose edges represent the walls
+     * @param height  is the height of the world whose edges represent the walls
+     * @param seconds is the length of the step the balls will be moved by afterwards
+     */
+    public static void handleCollisions(BallStore store, ChangeBuffer changes, double width, double height, double seconds) {
+        if (createdBroadPhaseType != broadPhaseType) {
+            createdBroadPhaseType = broadPhaseType;
+            broadPhase = createdBroadPhaseType.create();
+        }
+        double sweepSeconds = sweepSeconds(seconds);
+        long wallStart = System.nanoTime();
+        lastWallHits = handleWallCollisions(store, changes, width, height, seconds);
+        candidatePairs.clear();
+        long buildStart = System.nanoTime();
+        broadPhase.findPairs(store, width, height, sweepSeconds, candidatePairs);
+        long buildEnd = System.nanoTime();
+        long buildNanos = buildEnd - buildStart;
+        FrameTimings.record(FrameTimings.Phase.WALLS, buildStart - wallStart);
+        FrameTimings.record(FrameTimings.Phase.BROAD_PHASE, buildNanos);
+
+        int candidateCount = candidatePairs.size();
+        if (isOverlapping.length < candidateCount) {
+            isOverlapping = new boolean[candidateCount];
+        }
+        boolean[] overlapping = isOverlapping;
+        CollisionScheduler currentScheduler = scheduler;
+        currentScheduler.forEach(0, candidateCount, pair ->
+                overlapping[pair] = mayTouch(store, candidatePairs.first(pair), candidatePairs.second(pair), sweepSeconds));
+        overlappingPairs.clear();
+        for (int pair = 0; pair < candidateCount; pair++) {
+            if (overlapping[pair]) {
+                overlappingPairs.add(candidatePairs.first(pair), candidatePairs.second(pair));
+            }
+        }
+        overlappingPairs.sort();
+        contactBatches.build(overlappingPairs, store.size());
+        long contacts = 0;
+        for (int batch = 0; batch < contactBatches.batchCount(); batch++) {
+            contacts += currentScheduler.count(contactBatches.batchStart(batch), contactBatches.batchEnd(batch),
+                    position -> resolveContact(store, changes, position, sweepSeconds));
+        }
+        FrameTimings.record(FrameTimings.Phase.CONTACTS, System.nanoTime() - buildEnd);
+        long sortSwaps = broadPhase instanceof SweepAndPrune ? ((SweepAndPrune) broadPhase).getLastSwapCount() : 0;
+        lastStats = new BroadPhaseStats(candidatePairs.size(), contacts, buildNanos, sortSwaps);
+    }
+
+    /**
+     * Reflects every ball that reaches a wall during the step while moving towards it, and blurs it. Each ball only
+     * reads and writes its own state, so the balls are checked in parallel. This is the first pass of handleCollisions,
+     * and is also exposed on its own so that it can be measured separately.
+     *
+     * @param store   is the store holding the state of every ball
+     * @param changes is the buffer the blur changes are recorded in
+     * @param width   is the width of the world whose edges represent the walls
+     * @param height  is the height of the world whose edges represent the walls
+     * @param seconds is the length of the step the balls will be moved by afterwards
+     * @return the number of balls that bounced off a wall
+     */
+    public static long handleWallCollisions(BallStore store, ChangeBuffer changes, double width, double height, double seconds) {
+        double sweepSeconds = sweepSeconds(seconds);
+        return scheduler.count(0, store.size(), ball -> wallCollision(store, ball, changes, width, height, sweepSeconds));
+    }
+
+    /**
+     * @return the length of the step to look for collisions in, which is zero when continuous detection is off
+     */
+    static double sweepSeconds(double seconds) {
+        return isContinuous ? seconds : 0;
+    }
+
+    private static boolean resolveContact(BallStore store, ChangeBuffer changes, int position, double seconds) {
+        int contact = contactBatches.contactAt(position);
+        return ballCollision(store, overlappingPairs.first(contact), overlappingPairs.second(contact), changes, seconds);
+    }
+
+    /**
+     * @return whether the two balls are touching now or will touch within the given time, which only reads their state
+     */
+    static boolean mayTouch(BallStore store, int ball1, int ball2, double seconds) {
+        return timeOfImpact(store.getX(ball2) - store.getX(ball1), store.getY(ball2) - store.getY(ball1),
+                store.getXVelocity(ball2) - store.getXVelocity(ball1), store.getYVelocity(ball2) - store.getYVelocity(ball1),
+                store.getRadius(ball1) + store.getRadius(ball2), seconds) >= 0;
+    }
+
+    /**
+     * Works out when two circles moving along straight lines first touch. Taking the first circle as standing still,
+     * the second is at deltaX, deltaY and moves at the relative velocity, and they touch once the distance between
+     * their centers is down to the sum of their radii. Squaring both sides gives a quadratic in the time whose smaller
+     * root is the moment of impact, and which only has a root at all if the circles come close enough.
+     *
+     * @param deltaX            is the horizontal distance from the first circle to the second
+     * @param deltaY            is the vertical distance from the first circle to the second
+     * @param relativeXVelocity is the horizontal velocity of the second circle minus that of the first
+     * @param relativeYVelocity is the vertical velocity of the second circle minus that of the first
+     * @param reach             is the sum of the radii of the two circles
+     * @param seconds           is the length of the step
+     * @return zero if the circles are touching already, the time at which they first touch if that is within the step,
+     * or -1 if they do not touch during the step
+     */
+    static double timeOfImpact(double deltaX, double deltaY, double relativeXVelocity, double relativeYVelocity, double reach, double seconds) {
+        double distanceSquared = deltaX * deltaX + deltaY * deltaY;
+        double gap = distanceSquared - reach * reach;
+        if (gap <= 0) {
+            return 0;
+        }
+        double approach = deltaX * relativeXVelocity + deltaY * relativeYVelocity;
+        if (seconds <= 0 || approach >= 0) {
+            return -1;
+        }
+        double speedSquared = relativeXVelocity * relativeXVelocity + relativeYVelocity * relativeYVelocity;
+        double discriminant = approach * approach - speedSquared * gap;
+        if (discriminant < 0) {
+            return -1;
+        }
+        // Written as gap / (-approach + sqrt(discriminant)), the smaller root avoids cancelling two nearly equal terms.
+        double time = gap / (-approach + Math.sqrt(discriminant));
+        return time <= seconds ? time : -1;
+    }
+
+    /**
+     * Below are simple getters and setters for the broad phase selection and its statistics.
+     * The selected broad phase may be changed from any thread and takes effect on the next frame.
+     */
+
+    public static BroadPhaseType getBroadPhaseType() {
+        return broadPhaseType;
+    }
+
+    public static void setBroadPhaseType(BroadPhaseType broadPhaseType) {
+        CollisionHandler.broadPhaseType = broadPhaseType;
+    }
+
+    public static boolean isContinuous() {
+        return isContinuous;
+    }
+
+    /**
+     * @param isContinuous is whether collisions are looked for during the whole step rather than only at its start
+     */
+    public static void setContinuous(boolean isContinuous) {
+        CollisionHandler.isContinuous = isContinuous;
+    }
+
+    public static CollisionScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Replaces the scheduler with one of the given number of threads, keeping its split threshold, and lets the
+     * threads of the old one exit. This must not be called while a step is running.
+     *
+     * @param parallelism is the number of threads to run the collision passes on
+     */
+    public static void setParallelism(int parallelism) {
+        CollisionScheduler oldScheduler = scheduler;
+        CollisionScheduler newScheduler = new CollisionScheduler(parallelism);
+        newScheduler.setSplitThreshold(oldScheduler.getSplitThreshold());
+        scheduler = newScheduler;
+        oldScheduler.shutdown();
+    }
+
+    public static BroadPhaseStats getLastStats() {
+        return lastStats;
+    }
+
+    public static long getLastWallHits() {
+        return lastWallHits;
+    }
+
+    /**
+     * Records the statistics of a frame whose collisions were handled somewhere else, such as by a PartitionedStepper,
+     * so that they are shown the same way.
+     */
+    static void recordStats(BroadPhaseStats stats) {
+        lastStats = stats;
+    }
+
+    /**
+     * Handles the logic for detecting whether a ball has collided with on of the four Pane edges.
+     * A collision with a wall can be simply thought of as a combination of two conditions.
+     * The first being, whether or not the respective edge of the ball touches the wall during the step.
+     * For example, the left side of the ball reaches the left wall, etc.
+     * Second, the ball must be traveling in the direction towards the wall it collides with.
+     * If these two conditions are true for any given direction, the ball will collide and reflect off the wall
+     * by inverting its respective horizontal or vertical velocity. If the ball only reaches the wall some time into the
+     * step, it is also mirrored across the point where it touches the wall, so that it ends the step where a ball that
+     * bounced at that moment would be.
+     * @param store is the store holding the state of every ball
+     * @param ball is the index of the ball that we want to check for wall collisions
+     * @param changes is the buffer the blur of the ball is recorded in
+     * @param width is the width of the world whose edges represent the walls
+     * @param height is the height of the world whose edges represent the walls
+     * @param seconds is the length of the step, or zero to only bounce balls that are touching a wall now
+     * @return whether the ball bounced off a wall
+     */
+    static boolean wallCollision(BallStore store, int ball, ChangeBuffer changes, double width, double height, double seconds) {
+        double leftWall = 0;
+        double rightWall = width;
+        double bottomWall = 0;
+        double topWall = height;
+        double horizontalVelocity = store.getXVelocity(ball);
+        double verticalVelocity = store.getYVelocity(ball);
+        double leftSideOfBall = store.getX(ball) - store.getRadius(ball);
+        double rightSideOfBall = store.getX(ball) + store.getRadius(ball);
+        double bottomSideOfBall = store.getY(ball) - store.getRadius(ball);
+        double topSideOfBall = store.getY(ball) + store.getRadius(ball);
+        boolean isLeftWallCollision = leftSideOfBall + horizontalVelocity * seconds <= leftWall;
+        boolean isRightWallCollision = rightSideOfBall + horizontalVelocity * seconds >= rightWall;
+        boolean isBottomWallCollision = bottomSideOfBall + verticalVelocity * seconds <= bottomWall;
+        boolean isTopWallCollision = topSideOfBall + verticalVelocity * seconds >= topWall;
+        boolean isBallMovingLeft = horizontalVelocity < 0;
+        boolean isBallMovingRight = horizontalVelocity > 0;
+        boolean isBallMovingDown = verticalVelocity < 0;
+        boolean isBallMovingUp = verticalVelocity > 0;
+        boolean isHorizontalBounce = (isBallMovingLeft && isLeftWallCollision) || (isBallMovingRight && isRightWallCollision);
+        boolean isVerticalBounce = (isBallMovingDown && isBottomWallCollision) || (isBallMovingUp && isTopWallCollision);
+        if (isHorizontalBounce) {
+            double wall = isBallMovingLeft ? leftWall - leftSideOfBall : rightWall - rightSideOfBall;
+            double timeOfImpact = Math.max(0, wall / horizontalVelocity);
+            if (timeOfImpact > 0) {
+                store.setX(ball, store.getX(ball) + 2 * horizontalVelocity * timeOfImpact);
+            }
+            store.setXVelocity(ball, -horizontalVelocity);
+            blur(store, ball, changes);
+        }
+        if (isVerticalBounce) {
+            double wall = isBallMovingDown ? bottomWall - bottomSideOfBall : topWall - topSideOfBall;
+            double timeOfImpact = Math.max(0, wall / verticalVelocity);
+            if (timeOfImpact > 0) {
+                store.setY(ball, store.getY(ball) + 2 * verticalVelocity * timeOfImpact);
+            }
+            store.setYVelocity(ball, -verticalVelocity);
+            blur(store, ball, changes);
+        }
+        return isHorizontalBounce || isVerticalBounce;
+    }
+
+    /**
+     * Marks a ball as blurred and records the change so that its view is blurred on the next pulse.
+     */
+    static void blur(BallStore store, int ball, ChangeBuffer changes) {
+        store.setBlurred(ball, true);
+        changes.recordAppearance(ball, store.getColorIndex(ball), true);
+    }
+
+    /**
+     * Gives a ball the color of another ball and records the change so that its view is recolored on the next pulse.
+     */
+    private static void takeColor(BallStore store, int ball, int from, ChangeBuffer changes) {
+        store.setColorIndex(ball, store.getColorIndex(from));
+        changes.recordAppearance(ball, store.getColorIndex(ball), store.isBlurred(ball));
+    }
+
+    /**
+     * A ball collision is a relatively complex phenomenon which involves detecting whether the two balls in question
+     * are overlapping, or will overlap at some point during the step. This is determined by their time of impact. We
+     * must also confirm that the two balls were actually moving towards each other at the moment of the collision by
+     * ensuring that their distance is decreasing.
+     * Once we have determined that a pair of balls has collided, we must calculate the deflection angles and velocities
+     * in which the balls will bounce, given their size, mass, velocity, etc. The line of contact is taken where the
+     * balls are at the moment of impact, and a collision some time into the step also moves both balls so that they
+     * reach the point of impact at that time on their new velocities.
+     * @param store is the store holding the state of every ball
+     * @param ball1 is the index of the first ball
+     * @param ball2 is the index of the second ball
+     * @param changes is the buffer the color change of the smaller ball is recorded in
+     * @param seconds is the length of the step, or zero to only collide balls that are overlapping now
+     * @return whether the two balls collided
+     */
+    static boolean ballCollision(BallStore store, int ball1, int ball2, ChangeBuffer changes, double seconds) {
+        final double relativeXVelocity = store.getXVelocity(ball2) - store.getXVelocity(ball1);
+        final double relativeYVelocity = store.getYVelocity(ball2) - store.getYVelocity(ball1);
+        final double timeOfImpact = timeOfImpact(store.getX(ball2) - store.getX(ball1), store.getY(ball2) - store.getY(ball1),
+                relativeXVelocity, relativeYVelocity, store.getRadius(ball1) + store.getRadius(ball2), seconds);
+        boolean isOverlapping = timeOfImpact >= 0;
+        final double deltaX = store.getX(ball2) - store.getX(ball1) + relativeXVelocity * Math.max(0, timeOfImpact);
+        final double deltaY = store.getY(ball2) - store.getY(ball1) + relativeYVelocity * Math.max(0, timeOfImpact);
+        boolean isDistanceDecreasing = (deltaX * relativeXVelocity + deltaY * relativeYVelocity < 0);
+        boolean isBallCollision = isOverlapping && isDistanceDecreasing;
+        if (isBallCollision) {
+//            Platform.runLater(() -> ball1.getView().setEffect(new Bloom()));
+//            Platform.runLater(() -> ball2.getView().setEffect(new Bloom()));
+            final double xVelocity1 = store.getXVelocity(ball1);
+            final double yVelocity1 = store.getYVelocity(ball1);
+            final double xVelocity2 = store.getXVelocity(ball2);
+            final double yVelocity2 = store.getYVelocity(ball2);
+            bounce(store, ball1, ball2, deltaX, deltaY, changes);
+            if (timeOfImpact > 0) {
+                store.setX(ball1, store.getX(ball1) + (xVelocity1 - store.getXVelocity(ball1)) * timeOfImpact);
+                store.setY(ball1, store.getY(ball1) + (yVelocity1 - store.getYVelocity(ball1)) * timeOfImpact);
+                store.setX(ball2, store.getX(ball2) + (xVelocity2 - store.getXVelocity(ball2)) * timeOfImpact);
+                store.setY(ball2, store.getY(ball2) + (yVelocity2 - store.getYVelocity(ball2)) * timeOfImpact);
+            }
+        }
+        return isBallCollision;
+    }
+
+    /**
+     * Bounces two balls off each other along the given line of contact, without checking whether they are touching,
+     * and gives the smaller ball the color of the larger one. Each ball keeps the part of its velocity across the line
+     * of contact, and the parts along it are exchanged as in a one dimensional elastic collision of the two masses.
+     * @param store is the store holding the state of every ball
+     * @param ball1 is the index of the first ball
+     * @param ball2 is the index of the second ball
+     * @param deltaX is the horizontal distance from the center of the first ball to the center of the second
+     * @param deltaY is the vertical distance from the center of the first ball to the center of the second
+     * @param changes is the buffer the color change of the smaller ball is recorded in
+     */
+    static void bounce(BallStore store, int ball1, int ball2, double deltaX, double deltaY, ChangeBuffer changes) {
+        if (store.getRadius(ball1) > store.getRadius(ball2)) {
+            takeColor(store, ball2, ball1, changes);
+        } else {
+            takeColor(store, ball1, ball2, changes);
+        }
+        final double distance = sqrt(deltaX * deltaX + deltaY * deltaY);
+        final double unitContactX = deltaX / distance;
+        final double unitContactY = deltaY / distance;
+
+        final double xVelocity1 = store.getXVelocity(ball1);
+        final double yVelocity1 = store.getYVelocity(ball1);
+        final double xVelocity2 = store.getXVelocity(ball2);
+        final double yVelocity2 = store.getYVelocity(ball2);
+
+        final double u1 = xVelocity1 * unitContactX + yVelocity1 * unitContactY;
+        final double u2 = xVelocity2 * unitContactX + yVelocity2 * unitContactY;
+
+        final double mass1 = store.getMass(ball1);
+        final double mass2 = store.getMass(ball2);
+        final double massSum = mass1 + mass2;
+        final double massDiff = mass1 - mass2;
+
+        final double v1 = (2 * mass2 * u2 + u1 * massDiff) / massSum;
+        final double v2 = (2 * mass1 * u1 - u2 * massDiff) / massSum;
+        final double u1PerpX = xVelocity1 - u1 * unitContactX;
+        final double u1PerpY = yVelocity1 - u1 * unitContactY;
+        final double u2PerpX = xVelocity2 - u2 * unitContactX;
+        final double u2PerpY = yVelocity2 - u2 * unitContactY;
+
+        store.setXVelocity(ball1, v1 * unitContactX + u1PerpX);
+        store.setYVelocity(ball1, v1 * unitContactY + u1PerpY);
+        store.setXVelocity(ball2, v2 * unitContactX + u2PerpX);
+        store.setYVelocity(ball2, v2 * unitContactY + u2PerpY);
+    }
+}
@@ -0,0 +1,184 @@
+package edu.uchicago.zhao.sim;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * The CollisionScheduler runs the parallel passes of the collision step, over the balls, the candidate pairs or the
+ * contacts of a batch, on a ForkJoinPool of its own rather than on the common pool through parallel streams. The
+ * simulation then no longer competes with everything else in the JVM that uses the common pool, and the number of
+ * threads it uses can be set independently of the number of cores.
+ * <p>
+ * A pass over a range of indices is split in halves, and the halves in halves again, until a piece holds no more than
+ * splitThreshold indices. Each such chunk is run as one task by whichever worker picks it up, and workers that run out
+ * of chunks steal halves that have not been split yet from the others, so the work evens out however unequal the
+ * chunks turn out to be. The threshold decides how much work a task holds: large enough that scheduling a task costs
+ * little next to running it, and small enough that a chunk of balls or pairs stays in the cache of the core running it
+ * and that there are enough chunks to keep every worker busy. A pass no longer than the threshold runs on the calling
+ * thread without involving the pool at all.
+ * <p>
+ * The scheduler counts the chunks it runs, how long the workers spent running them and how much worker time the
+ * passes had in total, along with the steals reported by the pool. The fraction of that time the workers spent idle,
+ * waiting for a chunk or for the others to finish, shows how well a pass scales with the number of threads.
+ */
+public class CollisionScheduler {
+
+    public static final int DEFAULT_SPLIT_THRESHOLD = 1024;
+
+    private final ForkJoinPool pool;
+    private volatile int splitThreshold = DEFAULT_SPLIT_THRESHOLD;
+    private final LongAdder chunkCount = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder capacityNanos = new LongAdder();
+
+    /**
+     * Creates the pool. Its workers are daemon threads named collision-N, so they never keep the application alive.
+     *
+     * @param parallelism is the number of worker threads
+     */
+    public CollisionScheduler(int parallelism) {
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("collision-" + thread.getPoolIndex());
+            return thread;
+        };
+        this.pool = new ForkJoinPool(parallelism, factory, null, false);
+    }
+
+    /**
+     * Tests every index in the given range in parallel and counts those that pass.
+     *
+     * @param start     is the first index of the range
+     * @param end       is one past the last index of the range
+     * @param predicate is the test, which may be run on any worker and for several indices at once
+     * @return how many indices passed the test
+     */
+    public long count(int start, int end, IntPredicate predicate) {
+        int threshold = Math.max(1, splitThreshold);
+        if (end - start <= threshold) {
+            return countChunk(start, end, predicate);
+        }
+        long passStart = System.nanoTime();
+        CountTask task = new CountTask(start, end, threshold, predicate);
+        pool.invoke(task);
+        capacityNanos.add((System.nanoTime() - passStart) * pool.getParallelism());
+        return task.count;
+    }
+
+    /**
+     * Runs the given action for every index in the given range in parallel.
+     *
+     * @param start  is the first index of the range
+     * @param end    is one past the last index of the range
+     * @param action is the action, which may be run on any worker and for several indices at once
+     */
+    public void forEach(int start, int end, IntConsumer action) {
+        count(start, end, index -> {
+            action.accept(index);
+            return false;
+        });
+    }
+
+    /**
+     * Lets the workers exit once they have finished what they are running. The scheduler cannot be used afterwards.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private static long countChunk(int start, int end, IntPredicate predicate) {
+        long count = 0;
+        for (int index = start; index < end; index++) {
+            if (predicate.test(index)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * A piece of a pass, which either runs its range as a chunk or splits it in two and runs both halves. ForkJoinTask
+     * is Serializable, but the tasks are never serialized, so the warnings about their fields are suppressed.
+     */
+    @SuppressWarnings("serial")
+    private final class CountTask extends RecursiveAction {
+
+        private final int start;
+        private final int end;
+        private final int threshold;
+        private final IntPredicate predicate;
+        private long count;
+
+        CountTask(int start, int end, int threshold, IntPredicate predicate) {
+            this.start = start;
+            this.end = end;
+            this.threshold = threshold;
+            this.predicate = predicate;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= threshold) {
+                long chunkStart = System.nanoTime();
+                count = countChunk(start, end, predicate);
+                busyNanos.add(System.nanoTime() - chunkStart);
+                chunkCount.increment();
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            CountTask second = new CountTask(middle, end, threshold, predicate);
+            second.fork();
+            CountTask first = new CountTask(start, middle, threshold, predicate);
+            first.compute();
+            second.join();
+            count = first.count + second.count;
+        }
+    }
+
+    /**
+     * Below are simple getters for the size of the pool and its counters, and a setter for the split threshold. The
+     * counters only ever grow, so whoever displays them takes the difference between two readings.
+     */
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public int getSplitThreshold() {
+        return splitThreshold;
+    }
+
+    /**
+     * @param splitThreshold is the largest number of indices a chunk may hold, which takes effect from the next pass
+     */
+    public void setSplitThreshold(int splitThreshold) {
+        this.splitThreshold = splitThreshold;
+    }
+
+    public long getStealCount() {
+        return pool.getStealCount();
+    }
+
+    public long getChunkCount() {
+        return chunkCount.sum();
+    }
+
+    /**
+     * @return how long the workers have spent running chunks, in nanoseconds
+     */
+    public long getBusyNanos() {
+        return busyNanos.sum();
+    }
+
+    /**
+     * @return how long the parallel passes took, in nanoseconds, times the number of workers, which is the worker time
+     * that was available to run their chunks
+     */
+    public long getCapacityNanos() {
+        return capacityNanos.sum();
+    }
+}
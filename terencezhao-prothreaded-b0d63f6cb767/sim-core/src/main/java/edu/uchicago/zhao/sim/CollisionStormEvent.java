@@ -0,0 +1,31 @@
+package edu.uchicago.zhao.sim;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The CollisionStormEvent is a Java Flight Recorder event written whenever a single step resolves at least as many
+ * contacts as the storm threshold of the Simulation. The usual cause is a fresh batch of balls spawned on top of each
+ * other by a click on the pane, where every ball overlaps many others until they have pushed each other apart. The
+ * event makes those steps easy to find in a recording and to line up with the pauses and allocation they cause.
+ */
+@Name("edu.uchicago.zhao.sim.CollisionStorm")
+@Label("Collision Storm")
+@Category({"Bouncing Balls", "Simulation"})
+@Description("A step that resolved more contacts than the storm threshold")
+@StackTrace(false)
+public class CollisionStormEvent extends Event {
+
+    @Label("Contacts")
+    long contacts;
+
+    @Label("Ball Count")
+    int ballCount;
+
+    @Label("Threshold")
+    long threshold;
+}
@@ -0,0 +1,97 @@
+package edu.uchicago.zhao.sim;
+
+import java.util.Arrays;
+
+/**
+ * The ContactBatches split a list of contacts into batches in which no ball appears more than once, so that every
+ * contact in a batch can be resolved in parallel without two threads ever writing the velocity of the same ball.
+ * <p>
+ * The batches are built by greedily coloring the contact graph in list order: each contact goes into the batch right
+ * after the latest batch either of its balls already appears in. This keeps the contacts of every single ball in the
+ * same order as in the list. Resolving the batches one after the other, each in parallel, therefore gives each ball
+ * exactly the same sequence of velocity updates as resolving the whole list serially, so the results are bit for bit
+ * identical to a serial run no matter how many threads take part.
+ * <p>
+ * All the arrays are kept between frames and only grow, so building the batches does not allocate in a steady state.
+ */
+public class ContactBatches {
+
+    private int[] lastBatchOfBall = new int[0];
+    private int[] batchOfContact = new int[0];
+    private int[] sortedContacts = new int[0];
+    private int[] batchStart = new int[1];
+    private int batchCount;
+
+    /**
+     * Sorts the given contacts into batches.
+     *
+     * @param contacts  is the list of contacts, as pairs of ball indices
+     * @param ballCount is the number of balls the indices refer to
+     */
+    public void build(PairList contacts, int ballCount) {
+        int contactCount = contacts.size();
+        if (lastBatchOfBall.length < ballCount) {
+            lastBatchOfBall = new int[ballCount];
+        }
+        if (batchOfContact.length < contactCount) {
+            batchOfContact = new int[contactCount];
+            sortedContacts = new int[contactCount];
+        }
+        Arrays.fill(lastBatchOfBall, 0, ballCount, -1);
+        batchCount = 0;
+        for (int contact = 0; contact < contactCount; contact++) {
+            int first = contacts.first(contact);
+            int second = contacts.second(contact);
+            int batch = Math.max(lastBatchOfBall[first], lastBatchOfBall[second]) + 1;
+            lastBatchOfBall[first] = batch;
+            lastBatchOfBall[second] = batch;
+            batchOfContact[contact] = batch;
+            batchCount = Math.max(batchCount, batch + 1);
+        }
+
+        // Counting sort the contacts by batch, keeping list order within each batch.
+        if (batchStart.length < batchCount + 1) {
+            batchStart = new int[batchCount + 1];
+        } else {
+            Arrays.fill(batchStart, 0, batchCount + 1, 0);
+        }
+        for (int contact = 0; contact < contactCount; contact++) {
+            batchStart[batchOfContact[contact] + 1]++;
+        }
+        for (int batch = 0; batch < batchCount; batch++) {
+            batchStart[batch + 1] += batchStart[batch];
+        }
+        for (int contact = 0; contact < contactCount; contact++) {
+            sortedContacts[batchStart[batchOfContact[contact]]++] = contact;
+        }
+        for (int batch = batchCount; batch > 0; batch--) {
+            batchStart[batch] = batchStart[batch - 1];
+        }
+        batchStart[0] = 0;
+    }
+
+    /**
+     * Below are simple accessors for the batches that have been built. The contacts of batch b are the ones at
+     * positions batchStart(b) up to, but not including, batchEnd(b).
+     */
+
+    public int batchCount() {
+        return batchCount;
+    }
+
+    public int batchStart(int batch) {
+        return batchStart[batch];
+    }
+
+    public int batchEnd(int batch) {
+        return batchStart[batch + 1];
+    }
+
+    /**
+     * @param position is a position between the start and end of a batch
+     * @return the index in the contact list of the contact at that position
+     */
+    public int contactAt(int position) {
+        return sortedContacts[position];
+    }
+}
@@ -0,0 +1,357 @@
+package edu.uchicago.zhao.sim;
+
+import java.util.Arrays;
+
+/**
+ * The EventDrivenStepper advances a Simulation from one collision to the next instead of in steps of a fixed length.
+ * Between two collisions every ball moves in a straight line, so the stepper predicts when each ball will next hit a
+ * wall or another ball, keeps those predictions in an EventQueue, and jumps straight to the earliest one. Every
+ * collision is therefore resolved at the exact moment it happens, however fast or small the balls are and however
+ * long the step, and the balls never overlap or pass through each other as they can between the checks of a time
+ * stepper.
+ * <p>
+ * Handling an event only changes the velocities of the one or two balls involved, so only their predictions are
+ * redone. Every ball has a collision count that goes up whenever its velocity changes, and every event remembers the
+ * counts of its balls at the time it was predicted. Predictions that involve a ball whose velocity has changed since
+ * are then simply skipped when they come up, rather than searched for and removed from the queue.
+ * <p>
+ * Balls are not moved between their events. Each ball remembers the time its position was last written, and its
+ * position at any later time is worked out from its velocity when it is needed. At the end of every step all the
+ * balls are brought up to the end of the step, so the store holds the state of every ball at that time as it would
+ * after any other step.
+ * <p>
+ * To avoid predicting every pair of balls, the world is split into a grid of cells at least as wide as the largest
+ * ball, and a ball is only checked against the balls in its own cell and the eight around it. The moment a ball
+ * crosses into another cell is an event like any other, after which it is checked against its new neighbours, and no
+ * prediction is made past the ball's next wall hit or cell crossing, since it is redone then anyway.
+ * <p>
+ * Since every collision already happens at its exact moment, steps are never split into sub-steps as they are by
+ * Simulation.step. Everything runs on the thread that calls step. The queue and the grid are built again whenever the
+ * balls are replaced or the world changes size, and in between they carry over from one step to the next. A step that
+ * would handle more than MAX_EVENTS_PER_BALL events for every ball stops after the last of them, so a scene so dense
+ * that it cannot be simulated in real time falls behind instead of freezing the simulation thread.
+ */
+public class EventDrivenStepper implements Stepper {
+
+    private static final int BALL = 0;
+    private static final int WALL_X = 1;
+    private static final int WALL_Y = 2;
+    private static final int CELL = 3;
+    private static final int NONE = -1;
+
+    /**
+     * How many events a step may handle for each ball before the stepper gives up on catching up.
+     */
+    private static final int MAX_EVENTS_PER_BALL = 100;
+
+    private final Simulation simulation;
+    private final EventQueue queue = new EventQueue();
+    private double now;
+    private double[] ballTime = new double[0];
+    private double[] horizon = new double[0];
+    private int[] collisionCount = new int[0];
+    private int[] cellOfBall = new int[0];
+    private int[] next = new int[0];
+    private int[] previous = new int[0];
+    private int[] head = new int[0];
+    private int columns;
+    private int rows;
+    private double cellSize;
+    private long builtGeneration = -1;
+    private double builtWidth = -1;
+    private double builtHeight = -1;
+    private int predictions;
+    private long contacts;
+    private long wallHits;
+    private volatile boolean isShutdown;
+
+    /**
+     * @param simulation is the simulation to step
+     */
+    public EventDrivenStepper(Simulation simulation) {
+        this.simulation = simulation;
+    }
+
+    /**
+     * Handles every event up to the end of the step in order, then brings every ball up to the end of the step.
+     */
+    public void step(double seconds) {
+        if (isShutdown) {
+            throw new IllegalStateException("The stepper has been shut down");
+        }
+        StepEvent event = new StepEvent();
+        event.begin();
+        simulation.prepareStep();
+        BallStore store = simulation.getStore();
+        ChangeBuffer changes = simulation.getChanges();
+        double width = simulation.getStepWidth();
+        double height = simulation.getStepHeight();
+        predictions = 0;
+        contacts = 0;
+        wallHits = 0;
+
+        long contactsStart = System.nanoTime();
+        double end = now + seconds;
+        boolean hasWorld = width > 0 && height > 0;
+        if (hasWorld) {
+            if (store.getGeneration() != builtGeneration || width != builtWidth || height != builtHeight) {
+                rebuild(store, width, height);
+            }
+            end = handleEvents(store, changes, end, (long) MAX_EVENTS_PER_BALL * Math.max(1, store.size()));
+        } else {
+            builtGeneration = -1;
+        }
+        long integrationStart = System.nanoTime();
+        if (hasWorld) {
+            for (int ball = 0; ball < store.size(); ball++) {
+                moveTo(store, ball, end);
+            }
+        } else {
+            store.advance(seconds);
+        }
+        now = end;
+        long integrationEnd = System.nanoTime();
+        FrameTimings.record(FrameTimings.Phase.CONTACTS, integrationStart - contactsStart);
+        FrameTimings.record(FrameTimings.Phase.INTEGRATION, integrationEnd - integrationStart);
+
+        BroadPhaseStats stats = new BroadPhaseStats(predictions, contacts, 0, 0);
+        CollisionHandler.recordStats(stats);
+        event.end();
+        simulation.commitStepEvents(event, stats, wallHits, 1);
+    }
+
+    /**
+     * The stepper has no threads to stop, so this only keeps it from being used again.
+     */
+    public void shutdown() {
+        isShutdown = true;
+    }
+
+    /**
+     * Handles the events up to the given time in order, skipping those that have gone stale.
+     *
+     * @return the time the step reached, which is the given time unless the step ran out of events
+     */
+    private double handleEvents(BallStore store, ChangeBuffer changes, double end, long maxEvents) {
+        long handled = 0;
+        while (queue.peekTime() <= end) {
+            if (handled == maxEvents) {
+                return now;
+            }
+            int slot = queue.poll();
+            int type = queue.type(slot);
+            int ball1 = queue.first(slot);
+            int ball2 = queue.second(slot);
+            if (collisionCount[ball1] != queue.firstCount(slot)
+                    || (type == BALL && collisionCount[ball2] != queue.secondCount(slot))) {
+                continue;
+            }
+            now = Math.max(now, queue.time(slot));
+            handled++;
+            moveTo(store, ball1, now);
+            collisionCount[ball1]++;
+            if (type == BALL) {
+                moveTo(store, ball2, now);
+                collisionCount[ball2]++;
+                CollisionHandler.bounce(store, ball1, ball2,
+                        store.getX(ball2) - store.getX(ball1), store.getY(ball2) - store.getY(ball1), changes);
+                contacts++;
+                predict(store, ball1, NONE);
+                predict(store, ball2, NONE);
+            } else if (type == WALL_X) {
+                store.setXVelocity(ball1, -store.getXVelocity(ball1));
+                CollisionHandler.blur(store, ball1, changes);
+                wallHits++;
+                predict(store, ball1, WALL_X);
+            } else if (type == WALL_Y) {
+                store.setYVelocity(ball1, -store.getYVelocity(ball1));
+                CollisionHandler.blur(store, ball1, changes);
+                wallHits++;
+                predict(store, ball1, WALL_Y);
+            } else {
+                moveToCell(ball1, ball2);
+                predict(store, ball1, NONE);
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Throws away every prediction, sizes the grid for the current balls and world, and predicts every ball afresh.
+     */
+    private void rebuild(BallStore store, double width, double height) {
+        int ballCount = store.size();
+        builtGeneration = store.getGeneration();
+        builtWidth = width;
+        builtHeight = height;
+        queue.clear();
+        if (ballTime.length < ballCount) {
+            ballTime = new double[ballCount];
+            horizon = new double[ballCount];
+            collisionCount = new int[ballCount];
+            cellOfBall = new int[ballCount];
+            next = new int[ballCount];
+            previous = new int[ballCount];
+        }
+        Arrays.fill(ballTime, 0, ballCount, now);
+        Arrays.fill(collisionCount, 0, ballCount, 0);
+
+        // About one ball per cell, but never narrower than the widest ball, so touching balls are always neighbours.
+        cellSize = Math.max(2 * store.maxRadius(), Math.sqrt(width * height / Math.max(1, ballCount)));
+        columns = Math.max(1, (int) Math.ceil(width / cellSize));
+        rows = Math.max(1, (int) Math.ceil(height / cellSize));
+        if (head.length < columns * rows) {
+            head = new int[columns * rows];
+        }
+        Arrays.fill(head, 0, columns * rows, NONE);
+        for (int ball = 0; ball < ballCount; ball++) {
+            int column = Math.min(columns - 1, Math.max(0, (int) (store.getX(ball) / cellSize)));
+            int row = Math.min(rows - 1, Math.max(0, (int) (store.getY(ball) / cellSize)));
+            insert(ball, row * columns + column);
+        }
+        for (int ball = 0; ball < ballCount; ball++) {
+            predict(store, ball, NONE);
+        }
+    }
+
+    /**
+     * Predicts the next event of a ball that has just been brought up to the current time. The earliest of its wall
+     * hits and cell crossings is queued and becomes its horizon, and every neighbour it would hit before either ball's
+     * horizon is queued as a ball collision.
+     *
+     * @param ball       is the index of the ball
+     * @param bouncedOff is the wall the ball has just bounced off, whose other side is ignored if the ball touches it
+     *                   already, so that a ball wider than the world does not bounce back and forth forever
+     */
+    private void predict(BallStore store, int ball, int bouncedOff) {
+        double x = store.getX(ball);
+        double y = store.getY(ball);
+        double xVelocity = store.getXVelocity(ball);
+        double yVelocity = store.getYVelocity(ball);
+        double radius = store.getRadius(ball);
+        int column = cellOfBall[ball] % columns;
+        int row = cellOfBall[ball] / columns;
+
+        double wallX = timeToWall(x, xVelocity, radius, builtWidth);
+        if (wallX == 0 && bouncedOff == WALL_X) {
+            wallX = Double.POSITIVE_INFINITY;
+        }
+        double wallY = timeToWall(y, yVelocity, radius, builtHeight);
+        if (wallY == 0 && bouncedOff == WALL_Y) {
+            wallY = Double.POSITIVE_INFINITY;
+        }
+        double cellX = timeToCellEdge(x, xVelocity, column, columns);
+        double cellY = timeToCellEdge(y, yVelocity, row, rows);
+
+        double earliest = Math.min(Math.min(wallX, wallY), Math.min(cellX, cellY));
+        horizon[ball] = now + earliest;
+        int count = collisionCount[ball];
+        if (earliest == Double.POSITIVE_INFINITY) {
+            // A ball standing still has no event of its own, and is only ever hit by others.
+        } else if (earliest == wallX) {
+            queue.add(horizon[ball], WALL_X, ball, 0, count, 0);
+        } else if (earliest == wallY) {
+            queue.add(horizon[ball], WALL_Y, ball, 0, count, 0);
+        } else if (earliest == cellX) {
+            queue.add(horizon[ball], CELL, ball, row * columns + column + (xVelocity > 0 ? 1 : -1), count, 0);
+        } else if (earliest == cellY) {
+            queue.add(horizon[ball], CELL, ball, (row + (yVelocity > 0 ? 1 : -1)) * columns + column, count, 0);
+        }
+
+        for (int neighbourRow = Math.max(0, row - 1); neighbourRow <= Math.min(rows - 1, row + 1); neighbourRow++) {
+            for (int neighbourColumn = Math.max(0, column - 1); neighbourColumn <= Math.min(columns - 1, column + 1); neighbourColumn++) {
+                for (int other = head[neighbourRow * columns + neighbourColumn]; other != NONE; other = next[other]) {
+                    if (other != ball) {
+                        predictCollision(store, ball, other, x, y, xVelocity, yVelocity, radius);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues the collision of a ball with one of its neighbours, if they hit before either of them reaches its
+     * horizon. Balls that overlap already are only collided if they are moving towards each other.
+     */
+    private void predictCollision(BallStore store, int ball, int other, double x, double y, double xVelocity, double yVelocity, double radius) {
+        predictions++;
+        double otherXVelocity = store.getXVelocity(other);
+        double otherYVelocity = store.getYVelocity(other);
+        double deltaX = store.getX(other) + otherXVelocity * (now - ballTime[other]) - x;
+        double deltaY = store.getY(other) + otherYVelocity * (now - ballTime[other]) - y;
+        double relativeXVelocity = otherXVelocity - xVelocity;
+        double relativeYVelocity = otherYVelocity - yVelocity;
+        double limit = Math.min(horizon[ball], horizon[other]) - now;
+        double timeOfImpact = CollisionHandler.timeOfImpact(deltaX, deltaY, relativeXVelocity, relativeYVelocity,
+                radius + store.getRadius(other), Math.max(0, limit));
+        if (timeOfImpact < 0 || (timeOfImpact == 0 && deltaX * relativeXVelocity + deltaY * relativeYVelocity >= 0)) {
+            return;
+        }
+        queue.add(now + timeOfImpact, BALL, ball, other, collisionCount[ball], collisionCount[other]);
+    }
+
+    /**
+     * @return how long until a ball moving along one axis touches the wall it is moving towards, which is zero if it
+     * touches it already, or infinity if it is not moving along the axis
+     */
+    private static double timeToWall(double position, double velocity, double radius, double size) {
+        if (velocity < 0) {
+            return Math.max(0, (position - radius) / -velocity);
+        }
+        if (velocity > 0) {
+            return Math.max(0, (size - radius - position) / velocity);
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return how long until a ball moving along one axis crosses into the next cell along it, or infinity if it is
+     * not moving along the axis or is in the last cell in the direction it is moving. The first and last cells stretch
+     * out past the walls, so balls that stray outside the world stay in the grid.
+     */
+    private double timeToCellEdge(double position, double velocity, int cell, int cellCount) {
+        if (velocity < 0 && cell > 0) {
+            return Math.max(0, (position - cell * cellSize) / -velocity);
+        }
+        if (velocity > 0 && cell < cellCount - 1) {
+            return Math.max(0, ((cell + 1) * cellSize - position) / velocity);
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Moves a ball along its velocity to the given time and notes that its position is now for that time.
+     */
+    private void moveTo(BallStore store, int ball, double time) {
+        double elapsed = time - ballTime[ball];
+        if (elapsed != 0) {
+            store.setX(ball, store.getX(ball) + store.getXVelocity(ball) * elapsed);
+            store.setY(ball, store.getY(ball) + store.getYVelocity(ball) * elapsed);
+            ballTime[ball] = time;
+        }
+    }
+
+    private void moveToCell(int ball, int cell) {
+        int before = previous[ball];
+        int after = next[ball];
+        if (before == NONE) {
+            head[cellOfBall[ball]] = after;
+        } else {
+            next[before] = after;
+        }
+        if (after != NONE) {
+            previous[after] = before;
+        }
+        insert(ball, cell);
+    }
+
+    private void insert(int ball, int cell) {
+        cellOfBall[ball] = cell;
+        previous[ball] = NONE;
+        next[ball] = head[cell];
+        if (head[cell] != NONE) {
+            previous[head[cell]] = ball;
+        }
+        head[cell] = ball;
+    }
+}
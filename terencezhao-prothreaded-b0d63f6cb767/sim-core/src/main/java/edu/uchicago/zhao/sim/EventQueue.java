@@ -0,0 +1,154 @@
+package edu.uchicago.zhao.sim;
+
+import java.util.Arrays;
+
+/**
+ * The EventQueue is the priority queue of predicted events used by the EventDrivenStepper, always handing back the
+ * event that happens first.
+ * <p>
+ * An event is a time, a type, the one or two balls it involves and the collision count each of those balls had when
+ * the event was predicted. Events are kept in slots of parallel primitive arrays and the binary heap only orders the
+ * slot numbers, so adding and removing an event moves a few ints and never allocates once the arrays have grown. Events
+ * that have gone stale are not searched for and removed. They are left in the queue and skipped by the stepper when
+ * they come up, by comparing the counts stored with them against the current counts of their balls.
+ */
+public class EventQueue {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int[] heap = new int[INITIAL_CAPACITY];
+    private int size;
+    private double[] time = new double[INITIAL_CAPACITY];
+    private int[] type = new int[INITIAL_CAPACITY];
+    private int[] first = new int[INITIAL_CAPACITY];
+    private int[] second = new int[INITIAL_CAPACITY];
+    private int[] firstCount = new int[INITIAL_CAPACITY];
+    private int[] secondCount = new int[INITIAL_CAPACITY];
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int freeCount;
+    private int slotCount;
+
+    /**
+     * Adds an event to the queue.
+     *
+     * @param eventTime        is when the event happens
+     * @param eventType        is what kind of event it is, as defined by the stepper
+     * @param firstBall        is the first ball the event involves
+     * @param secondBall       is the second ball the event involves, or any other value the event type needs
+     * @param firstBallCount   is the collision count of the first ball when the event was predicted
+     * @param secondBallCount  is the collision count of the second ball when the event was predicted
+     */
+    public void add(double eventTime, int eventType, int firstBall, int secondBall, int firstBallCount, int secondBallCount) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotCount == time.length) {
+                grow();
+            }
+            slot = slotCount++;
+        }
+        time[slot] = eventTime;
+        type[slot] = eventType;
+        first[slot] = firstBall;
+        second[slot] = secondBall;
+        firstCount[slot] = firstBallCount;
+        secondCount[slot] = secondBallCount;
+        int position = size++;
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (time[heap[parent]] <= eventTime) {
+                break;
+            }
+            heap[position] = heap[parent];
+            position = parent;
+        }
+        heap[position] = slot;
+    }
+
+    /**
+     * @return the time of the earliest event, or positive infinity if the queue is empty
+     */
+    public double peekTime() {
+        return size > 0 ? time[heap[0]] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Removes the earliest event from the queue and returns the slot holding it, whose fields can be read with the
+     * getters below. The slot is handed back to the queue for reuse, so it must be read before the next event is added.
+     *
+     * @return the slot of the earliest event
+     */
+    public int poll() {
+        int slot = heap[0];
+        int last = heap[--size];
+        int position = 0;
+        while (2 * position + 1 < size) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && time[heap[child + 1]] < time[heap[child]]) {
+                child++;
+            }
+            if (time[heap[child]] >= time[last]) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = last;
+        freeSlots[freeCount++] = slot;
+        return slot;
+    }
+
+    /**
+     * Removes every event from the queue.
+     */
+    public void clear() {
+        size = 0;
+        freeCount = 0;
+        slotCount = 0;
+    }
+
+    private void grow() {
+        int capacity = time.length * 2;
+        heap = Arrays.copyOf(heap, capacity);
+        time = Arrays.copyOf(time, capacity);
+        type = Arrays.copyOf(type, capacity);
+        first = Arrays.copyOf(first, capacity);
+        second = Arrays.copyOf(second, capacity);
+        firstCount = Arrays.copyOf(firstCount, capacity);
+        secondCount = Arrays.copyOf(secondCount, capacity);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+    }
+
+    /**
+     * Below are simple getters for the size of the queue and the fields of the event in a slot.
+     */
+
+    public int size() {
+        return size;
+    }
+
+    public double time(int slot) {
+        return time[slot];
+    }
+
+    public int type(int slot) {
+        return type[slot];
+    }
+
+    public int first(int slot) {
+        return first[slot];
+    }
+
+    public int second(int slot) {
+        return second[slot];
+    }
+
+    public int firstCount(int slot) {
+        return firstCount[slot];
+    }
+
+    public int secondCount(int slot) {
+        return secondCount[slot];
+    }
+}
@@ -0,0 +1,69 @@
+package edu.uchicago.zhao.sim;
+
+/**
+ * The FrameTimings keep a LatencyHistogram for every phase of a frame, so that a slow frame can be traced to the phase
+ * that made it slow. The simulation records its own phases as it steps, and the application records the phases that
+ * run on the JavaFX application thread.
+ * <p>
+ * Recording is allocation free and safe from any thread. Whoever displays the timings reads the percentiles of each
+ * phase and resets the histograms at whatever interval suits it.
+ */
+public class FrameTimings {
+
+    /**
+     * The phases of a frame, in the order they run.
+     */
+    public enum Phase {
+        WALLS("Walls"),
+        BROAD_PHASE("Broad"),
+        CONTACTS("Contacts"),
+        INTEGRATION("Move"),
+        APPLY_CHANGES("Apply"),
+        RENDER("Render");
+
+        private final String displayName;
+
+        Phase(String displayName) {
+            this.displayName = displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    private static final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+
+    static {
+        for (int phase = 0; phase < histograms.length; phase++) {
+            histograms[phase] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records how long a phase took on one frame.
+     *
+     * @param phase is the phase that ran
+     * @param nanos is how long it took in nanoseconds
+     */
+    public static void record(Phase phase, long nanos) {
+        histograms[phase.ordinal()].record(nanos);
+    }
+
+    /**
+     * @return the histogram of the durations recorded for the given phase
+     */
+    public static LatencyHistogram histogram(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    /**
+     * Resets the histogram of every phase.
+     */
+    public static void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+}
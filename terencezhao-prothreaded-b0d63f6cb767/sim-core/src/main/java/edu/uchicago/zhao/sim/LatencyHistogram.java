@@ -0,0 +1,113 @@
+package edu.uchicago.zhao.sim;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The LatencyHistogram counts how many recorded durations fall into each of a fixed set of buckets, so that
+ * percentiles can be read from it at any time without keeping every duration.
+ * <p>
+ * The buckets are log-linear: every power of two is split into SUB_BUCKETS equal buckets, so a bucket is never wider
+ * than an eighth of the values it holds and the percentiles are accurate to within about 12%, from single nanoseconds
+ * up to hours, with only a few hundred counters. Recording a duration finds its bucket with a couple of bit operations
+ * and increments one atomic counter, so it never locks and never allocates, and may be called from any thread while
+ * another thread reads the percentiles.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Adds a duration to the histogram. Negative durations are counted as zero.
+     *
+     * @param nanos is the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        totalCount.incrementAndGet();
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Returns the duration below which the given fraction of the recorded durations fall. The result is the upper edge
+     * of the bucket holding that duration, capped at the largest duration recorded.
+     *
+     * @param fraction is the fraction of durations, such as 0.5 for the median or 0.99 for the 99th percentile
+     * @return the duration in nanoseconds, or zero if nothing has been recorded
+     */
+    public long percentile(double fraction) {
+        long total = totalCount.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(upperEdgeOf(bucket), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Throws away everything recorded so far. Durations recorded while the reset is running may be partly kept.
+     */
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            counts.set(bucket, 0);
+        }
+        totalCount.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Values below SUB_BUCKETS get a bucket each. Above that, the bucket is picked by the position of the highest set
+     * bit and the SUB_BUCKET_BITS bits just below it.
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (highestBit - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the largest value that falls into the given bucket
+     */
+    private static long upperEdgeOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int highestBit = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long lowerEdge = (SUB_BUCKETS + subBucket) << (highestBit - SUB_BUCKET_BITS);
+        long width = 1L << (highestBit - SUB_BUCKET_BITS);
+        return lowerEdge + width - 1;
+    }
+
+    /**
+     * Below are simple getters for the totals of the histogram.
+     */
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+}
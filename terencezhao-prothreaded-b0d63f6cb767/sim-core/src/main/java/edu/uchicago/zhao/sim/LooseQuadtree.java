@@ -0,0 +1,215 @@
+package edu.uchicago.zhao.sim;
+
+import java.util.Arrays;
+/**
+ * The LooseQuadtree broad phase sorts balls into a tree of nested squares based on both where they are and how big
+ * they are, so that a mix of small and large balls can share the pane without the large balls ending up in many cells.
+ * <p>
+ * The root node covers the whole pane and every level splits each node into four children of half the size.
+ * The tree is "loose" because a node accepts a ball whose center lies inside the node, but tests collisions against
+ * bounds twice as large as the node. A ball therefore always lives in exactly one node: the deepest node whose size is
+ * still at least the diameter of the ball. Small balls sink deep into the tree while large balls stay near the root.
+ * <p>
+ * The tree is complete and stored implicitly in primitive arrays, with each node holding an intrusive doubly linked
+ * list of the balls in it. When a ball moves, it is only unlinked and relinked if its node actually changed, which
+ * for the few pixels a ball moves per frame is rare. Each node also counts the balls in its whole subtree so that
+ * queries can skip empty branches.
+ */
+public class LooseQuadtree implements BroadPhase {
+
+    private static final int MAX_DEPTH = 8;
+
+    private final int[] levelOffset = new int[MAX_DEPTH + 2];
+    private final int[] head;
+    private final int[] subtreeCount;
+    private final int[] stack = new int[4 * (MAX_DEPTH + 1)];
+
+    private int[] nodeOfBall = new int[0];
+    private int[] next = new int[0];
+    private int[] previous = new int[0];
+    private double[] centerX = new double[0];
+    private double[] centerY = new double[0];
+    private double[] radius = new double[0];
+
+    private int trackedCount = -1;
+    private double worldSize = -1;
+
+    /**
+     * The constructor lays out the offsets of each level in the implicit node arrays.
+     * Level d holds 4^d nodes, stored row by row after all the nodes of the levels above it.
+     */
+    public LooseQuadtree() {
+        for (int level = 0; level <= MAX_DEPTH; level++) {
+            levelOffset[level + 1] = levelOffset[level] + (1 << (2 * level));
+        }
+        head = new int[levelOffset[MAX_DEPTH + 1]];
+        subtreeCount = new int[levelOffset[MAX_DEPTH + 1]];
+        Arrays.fill(head, -1);
+    }
+
+    /**
+     * Moves every ball whose node has changed since the last frame and adds each pair of balls whose bounding boxes
+     * overlap to the given pair list. Each unordered pair is added once, with the lower ball index first.
+     *
+     * @param store       is the store of balls in the tree
+     * @param worldWidth  is the width of the pane the balls bounce in
+     * @param worldHeight is the height of the pane the balls bounce in
+     * @param seconds     is the length of the step, or zero to only find the pairs touching now
+     * @param pairs       is the list the candidate pairs will be appended to
+     */
+    public void findPairs(BallStore store, double worldWidth, double worldHeight, double seconds, PairList pairs) {
+        int ballCount = store.size();
+        double size = Math.max(1, Math.max(worldWidth, worldHeight));
+        if (ballCount != trackedCount || size != worldSize) {
+            reset(ballCount, size);
+        }
+        for (int i = 0; i < ballCount; i++) {
+            centerX[i] = store.getX(i);
+            centerY[i] = store.getY(i);
+            radius[i] = store.getReach(i, seconds);
+            int node = nodeFor(centerX[i], centerY[i], radius[i]);
+            if (node != nodeOfBall[i]) {
+                if (nodeOfBall[i] >= 0) {
+                    unlink(i);
+                }
+                link(i, node);
+            }
+        }
+        for (int i = 0; i < ballCount; i++) {
+            query(i, pairs);
+        }
+    }
+
+    /**
+     * Walks down the tree from the root, visiting only non-empty nodes whose loose bounds overlap the bounding box
+     * of the given ball, and reports every ball with a higher index whose bounding box overlaps it too.
+     */
+    private void query(int ball, PairList pairs) {
+        double x = centerX[ball];
+        double y = centerY[ball];
+        double r = radius[ball];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (subtreeCount[node] == 0) {
+                continue;
+            }
+            int level = levelOf(node);
+            int cellsPerSide = 1 << level;
+            int cell = node - levelOffset[level];
+            double nodeSize = worldSize / cellsPerSide;
+            double nodeCenterX = (cell % cellsPerSide + 0.5) * nodeSize;
+            double nodeCenterY = (cell / cellsPerSide + 0.5) * nodeSize;
+            // The loose bounds extend a whole node size from the center rather than half of it. The root is never
+            // skipped since it also holds the balls that have strayed outside the pane.
+            if (node != 0 && (Math.abs(x - nodeCenterX) > nodeSize + r || Math.abs(y - nodeCenterY) > nodeSize + r)) {
+                continue;
+            }
+            for (int other = head[node]; other >= 0; other = next[other]) {
+                double reach = r + radius[other];
+                if (other > ball && Math.abs(centerX[other] - x) <= reach && Math.abs(centerY[other] - y) <= reach) {
+                    pairs.add(ball, other);
+                }
+            }
+            if (level < MAX_DEPTH) {
+                int childRow = 2 * (cell / cellsPerSide);
+                int childColumn = 2 * (cell % cellsPerSide);
+                int childOffset = levelOffset[level + 1];
+                int childrenPerSide = cellsPerSide * 2;
+                stack[top++] = childOffset + childRow * childrenPerSide + childColumn;
+                stack[top++] = childOffset + childRow * childrenPerSide + childColumn + 1;
+                stack[top++] = childOffset + (childRow + 1) * childrenPerSide + childColumn;
+                stack[top++] = childOffset + (childRow + 1) * childrenPerSide + childColumn + 1;
+            }
+        }
+    }
+
+    /**
+     * Finds the node a ball belongs in. The level is the deepest one whose nodes are still at least as wide as the
+     * ball, and the node within that level is the one containing the center of the ball.
+     * Balls whose centers have left the pane, for example while the window is being resized, are kept at the root.
+     */
+    private int nodeFor(double x, double y, double r) {
+        if (x < 0 || y < 0 || x >= worldSize || y >= worldSize) {
+            return 0;
+        }
+        int level = 0;
+        while (level < MAX_DEPTH && worldSize / (1 << (level + 1)) >= 2 * r) {
+            level++;
+        }
+        int cellsPerSide = 1 << level;
+        double nodeSize = worldSize / cellsPerSide;
+        int column = Math.min((int) (x / nodeSize), cellsPerSide - 1);
+        int row = Math.min((int) (y / nodeSize), cellsPerSide - 1);
+        return levelOffset[level] + row * cellsPerSide + column;
+    }
+
+    private int levelOf(int node) {
+        int level = 0;
+        while (node >= levelOffset[level + 1]) {
+            level++;
+        }
+        return level;
+    }
+
+    private int parentOf(int node) {
+        int level = levelOf(node);
+        int cellsPerSide = 1 << level;
+        int cell = node - levelOffset[level];
+        return levelOffset[level - 1] + (cell / cellsPerSide / 2) * (cellsPerSide / 2) + (cell % cellsPerSide) / 2;
+    }
+
+    private void link(int ball, int node) {
+        nodeOfBall[ball] = node;
+        previous[ball] = -1;
+        next[ball] = head[node];
+        if (head[node] >= 0) {
+            previous[head[node]] = ball;
+        }
+        head[node] = ball;
+        adjustSubtreeCounts(node, 1);
+    }
+
+    private void unlink(int ball) {
+        int node = nodeOfBall[ball];
+        if (previous[ball] >= 0) {
+            next[previous[ball]] = next[ball];
+        } else {
+            head[node] = next[ball];
+        }
+        if (next[ball] >= 0) {
+            previous[next[ball]] = previous[ball];
+        }
+        nodeOfBall[ball] = -1;
+        adjustSubtreeCounts(node, -1);
+    }
+
+    private void adjustSubtreeCounts(int node, int delta) {
+        while (node > 0) {
+            subtreeCount[node] += delta;
+            node = parentOf(node);
+        }
+        subtreeCount[0] += delta;
+    }
+
+    /**
+     * Empties the tree whenever the number of balls or the size of the pane changes, since the indices or the node
+     * bounds of the previous frame no longer apply.
+     */
+    private void reset(int ballCount, double size) {
+        if (nodeOfBall.length < ballCount) {
+            nodeOfBall = new int[ballCount];
+            next = new int[ballCount];
+            previous = new int[ballCount];
+            centerX = new double[ballCount];
+            centerY = new double[ballCount];
+            radius = new double[ballCount];
+        }
+        Arrays.fill(nodeOfBall, -1);
+        Arrays.fill(head, -1);
+        Arrays.fill(subtreeCount, 0);
+        trackedCount = ballCount;
+        worldSize = size;
+    }
+}
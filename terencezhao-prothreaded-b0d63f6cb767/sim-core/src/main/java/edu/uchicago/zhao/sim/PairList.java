@@ -0,0 +1,98 @@
+package edu.uchicago.zhao.sim;
+
+import java.util.Arrays;
+
+/**
+ * The PairList is a growable list of ball index pairs that a broad phase hands to the narrow phase.
+ * Rather than allocating an object for every candidate pair, both indices are packed next to each other in a single
+ * primitive int array. The array is kept between frames and only grows, so once the simulation has settled into a
+ * steady state, collecting candidate pairs does not allocate at all.
+ */
+public class PairList {
+
+    /**
+     * The most pairs a list can hold. Each pair takes two ints, and the backing array stays a little short of the
+     * largest int so that every JVM can allocate it.
+     */
+    public static final int MAX_PAIRS = (Integer.MAX_VALUE - 8) / 2;
+
+    private int[] pairs = new int[128];
+    private long[] sortKeys = new long[0];
+    private int size;
+
+    /**
+     * Appends the pair (first, second) to the end of the list, doubling the backing array if it is full.
+     *
+     * @param first  is the index of the first ball of the pair
+     * @param second is the index of the second ball of the pair
+     * @throws IllegalStateException if the list already holds MAX_PAIRS pairs
+     */
+    public void add(int first, int second) {
+        if (2 * size == pairs.length) {
+            grow();
+        }
+        pairs[2 * size] = first;
+        pairs[2 * size + 1] = second;
+        size++;
+    }
+
+    /**
+     * Doubles the backing array, or grows it to hold MAX_PAIRS if doubling would take it past that. Doubling an array
+     * of more than a billion ints would overflow its length, so the new length is worked out in a long.
+     */
+    private void grow() {
+        if (size == MAX_PAIRS) {
+            throw new IllegalStateException("A PairList cannot hold more than " + MAX_PAIRS
+                    + " pairs. The balls are likely stacked on top of each other, so nearly every pair is a candidate.");
+        }
+        int grownLength = (int) Math.min(2L * pairs.length, 2L * MAX_PAIRS);
+        int[] grown = new int[grownLength];
+        System.arraycopy(pairs, 0, grown, 0, pairs.length);
+        pairs = grown;
+    }
+
+    /**
+     * Below are simple accessors for the pairs that have been collected.
+     */
+
+    public int size() {
+        return size;
+    }
+
+    public int first(int pair) {
+        return pairs[2 * pair];
+    }
+
+    public int second(int pair) {
+        return pairs[2 * pair + 1];
+    }
+
+    /**
+     * Sorts the pairs by their first and then their second ball. Every broad phase finds the same pairs for the same
+     * balls, but in an order that depends on the broad phase and, for the sweep and the quadtree, on what they kept
+     * from earlier frames. Sorting the contacts before they are resolved makes the results depend on the balls alone,
+     * so a restored scene carries on exactly as the saved one would have, whichever broad phase is selected.
+     * Each pair is packed into a single long so that a primitive sort can be used, and the array of keys is kept
+     * between frames like the pairs themselves.
+     */
+    public void sort() {
+        if (sortKeys.length < size) {
+            sortKeys = new long[Math.max(size, sortKeys.length * 2)];
+        }
+        for (int pair = 0; pair < size; pair++) {
+            sortKeys[pair] = (long) pairs[2 * pair] << 32 | pairs[2 * pair + 1];
+        }
+        Arrays.sort(sortKeys, 0, size);
+        for (int pair = 0; pair < size; pair++) {
+            pairs[2 * pair] = (int) (sortKeys[pair] >>> 32);
+            pairs[2 * pair + 1] = (int) sortKeys[pair];
+        }
+    }
+
+    /**
+     * Empties the list without releasing the backing array so it can be reused on the next frame.
+     */
+    public void clear() {
+        size = 0;
+    }
+}
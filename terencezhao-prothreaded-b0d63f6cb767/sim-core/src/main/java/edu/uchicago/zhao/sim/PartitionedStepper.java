@@ -0,0 +1,213 @@
+package edu.uchicago.zhao.sim;
+
+import java.util.concurrent.Phaser;
+
+/**
+ * The PartitionedStepper steps a Simulation with a fixed pool of worker threads instead of the work-stealing
+ * CollisionScheduler used by Simulation.step. The balls are split into one contiguous range per worker, and every
+ * worker handles the wall collisions and the movement of the balls in its own range, so no two workers ever write the
+ * same ball.
+ * <p>
+ * A step is a fixed sequence of phases, and a Phaser holds every worker at the end of each phase until all of them,
+ * and the thread that called step, have finished it:
+ * <ol>
+ * <li>the workers handle the wall collisions of their range,</li>
+ * <li>the calling thread runs the broad phase,</li>
+ * <li>the workers test their share of the candidate pairs for whether they touch during the step,</li>
+ * <li>the calling thread collects the overlapping pairs into ContactBatches,</li>
+ * <li>the workers resolve their share of each batch, one batch per phase,</li>
+ * <li>the workers move the balls of their range.</li>
+ * </ol>
+ * A step is split into sub-steps exactly as Simulation.step splits it, and the whole sequence runs once for every
+ * sub-step. Since the contacts are resolved batch by batch exactly as in CollisionHandler, the results are the same as
+ * those of Simulation.step whatever the number of workers.
+ * <p>
+ * The workers are daemon threads that wait on the Phaser between steps, so the pool costs nothing while idle and never
+ * keeps the application alive. Only one thread may call step at a time.
+ */
+public class PartitionedStepper implements Stepper {
+
+    private final Simulation simulation;
+    private final int threadCount;
+    private final Phaser phaser;
+    private final long[] contactsOfWorker;
+    private final long[] wallHitsOfWorker;
+    private final PairList candidatePairs = new PairList();
+    private final PairList overlappingPairs = new PairList();
+    private final ContactBatches contactBatches = new ContactBatches();
+    private boolean[] isOverlapping = new boolean[0];
+    private BroadPhaseType broadPhaseType;
+    private BroadPhase broadPhase;
+    private double stepSeconds;
+    private double sweepSeconds;
+    private double width;
+    private double height;
+    private volatile boolean isShutdown;
+
+    /**
+     * Creates the pool and starts its workers.
+     *
+     * @param simulation  is the simulation to step
+     * @param threadCount is the number of worker threads, and so the number of ranges the balls are split into
+     */
+    public PartitionedStepper(Simulation simulation, int threadCount) {
+        this.simulation = simulation;
+        this.threadCount = threadCount;
+        this.phaser = new Phaser(threadCount + 1);
+        this.contactsOfWorker = new long[threadCount];
+        this.wallHitsOfWorker = new long[threadCount];
+        for (int worker = 0; worker < threadCount; worker++) {
+            final int index = worker;
+            Thread thread = new Thread(() -> work(index), "stepper-" + worker);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Advances the simulation by the given amount of time and returns once every worker has finished the step.
+     */
+    public void step(double seconds) {
+        if (isShutdown) {
+            throw new IllegalStateException("The stepper has been shut down");
+        }
+        StepEvent event = new StepEvent();
+        event.begin();
+        simulation.prepareStep();
+        int substeps = simulation.substepsFor(seconds);
+        stepSeconds = seconds / substeps;
+        sweepSeconds = CollisionHandler.sweepSeconds(stepSeconds);
+        width = simulation.getStepWidth();
+        height = simulation.getStepHeight();
+        BroadPhaseStats stats = BroadPhaseStats.EMPTY;
+        long wallHits = 0;
+        for (int substep = 0; substep < substeps; substep++) {
+            stats = stats.plus(substep());
+            for (int worker = 0; worker < threadCount; worker++) {
+                wallHits += wallHitsOfWorker[worker];
+            }
+        }
+        CollisionHandler.recordStats(stats);
+        event.end();
+        simulation.commitStepEvents(event, stats, wallHits, substeps);
+    }
+
+    /**
+     * Runs the workers through one sub-step.
+     *
+     * @return what the broad phase and the contacts of the sub-step counted
+     */
+    private BroadPhaseStats substep() {
+        BallStore store = simulation.getStore();
+        phaser.arriveAndAwaitAdvance();
+        phaser.arriveAndAwaitAdvance();
+
+        if (broadPhaseType != CollisionHandler.getBroadPhaseType()) {
+            broadPhaseType = CollisionHandler.getBroadPhaseType();
+            broadPhase = broadPhaseType.create();
+        }
+        candidatePairs.clear();
+        long buildStart = System.nanoTime();
+        broadPhase.findPairs(store, width, height, sweepSeconds, candidatePairs);
+        long buildNanos = System.nanoTime() - buildStart;
+        if (isOverlapping.length < candidatePairs.size()) {
+            isOverlapping = new boolean[candidatePairs.size()];
+        }
+        phaser.arriveAndAwaitAdvance();
+        phaser.arriveAndAwaitAdvance();
+
+        overlappingPairs.clear();
+        for (int pair = 0; pair < candidatePairs.size(); pair++) {
+            if (isOverlapping[pair]) {
+                overlappingPairs.add(candidatePairs.first(pair), candidatePairs.second(pair));
+            }
+        }
+        overlappingPairs.sort();
+        contactBatches.build(overlappingPairs, store.size());
+        phaser.arriveAndAwaitAdvance();
+        for (int batch = 0; batch < contactBatches.batchCount(); batch++) {
+            phaser.arriveAndAwaitAdvance();
+        }
+        phaser.arriveAndAwaitAdvance();
+
+        long contacts = 0;
+        for (int worker = 0; worker < threadCount; worker++) {
+            contacts += contactsOfWorker[worker];
+        }
+        long sortSwaps = broadPhase instanceof SweepAndPrune ? ((SweepAndPrune) broadPhase).getLastSwapCount() : 0;
+        return new BroadPhaseStats(candidatePairs.size(), contacts, buildNanos, sortSwaps);
+    }
+
+    /**
+     * Lets every worker finish and exit.
+     */
+    public void shutdown() {
+        if (!isShutdown) {
+            isShutdown = true;
+            phaser.arriveAndDeregister();
+        }
+    }
+
+    /**
+     * The loop each worker runs. Every arriveAndAwaitAdvance here is matched by one in substep.
+     */
+    private void work(int worker) {
+        BallStore store = simulation.getStore();
+        ChangeBuffer changes = simulation.getChanges();
+        while (true) {
+            phaser.arriveAndAwaitAdvance();
+            if (isShutdown) {
+                phaser.arriveAndDeregister();
+                return;
+            }
+            int ballStart = sliceStart(worker, store.size());
+            int ballEnd = sliceStart(worker + 1, store.size());
+            long wallHits = 0;
+            for (int ball = ballStart; ball < ballEnd; ball++) {
+                if (CollisionHandler.wallCollision(store, ball, changes, width, height, sweepSeconds)) {
+                    wallHits++;
+                }
+            }
+            wallHitsOfWorker[worker] = wallHits;
+            phaser.arriveAndAwaitAdvance();
+            phaser.arriveAndAwaitAdvance();
+
+            int pairEnd = sliceStart(worker + 1, candidatePairs.size());
+            for (int pair = sliceStart(worker, candidatePairs.size()); pair < pairEnd; pair++) {
+                isOverlapping[pair] = CollisionHandler.mayTouch(store, candidatePairs.first(pair), candidatePairs.second(pair), sweepSeconds);
+            }
+            phaser.arriveAndAwaitAdvance();
+            phaser.arriveAndAwaitAdvance();
+
+            long contacts = 0;
+            for (int batch = 0; batch < contactBatches.batchCount(); batch++) {
+                int start = contactBatches.batchStart(batch);
+                int size = contactBatches.batchEnd(batch) - start;
+                int end = start + sliceStart(worker + 1, size);
+                for (int position = start + sliceStart(worker, size); position < end; position++) {
+                    int contact = contactBatches.contactAt(position);
+                    if (CollisionHandler.ballCollision(store, overlappingPairs.first(contact), overlappingPairs.second(contact), changes, sweepSeconds)) {
+                        contacts++;
+                    }
+                }
+                phaser.arriveAndAwaitAdvance();
+            }
+            contactsOfWorker[worker] = contacts;
+
+            store.advance(ballStart, ballEnd, stepSeconds);
+            phaser.arriveAndAwaitAdvance();
+        }
+    }
+
+    /**
+     * @return the index the given worker's share of count items starts at, which is also where the previous worker's
+     * share ends
+     */
+    private int sliceStart(int worker, int count) {
+        return (int) ((long) count * worker / threadCount);
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+}
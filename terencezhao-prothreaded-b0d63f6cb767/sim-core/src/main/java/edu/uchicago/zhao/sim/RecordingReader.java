@@ -0,0 +1,185 @@
+package edu.uchicago.zhao.sim;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The RecordingReader loads the frames of a file written by a SimulationRecorder back into a Simulation, so that the
+ * application can replay a run by drawing the loaded balls instead of stepping the physics.
+ * <p>
+ * Any frame can be loaded in constant time: its offset is looked up in the index, and the frame is read with a single
+ * positioned read, along with its keyframe if that is not the one already loaded. Scrubbing back and forth through a
+ * long recording therefore costs the same as playing it.
+ * <p>
+ * Loading a frame overwrites the balls in the simulation's store. When the frame belongs to the same keyframe as the
+ * one loaded before it, the balls stay the same balls and those whose color or blur changed are recorded in the
+ * simulation's ChangeBuffer, exactly as a step would. Otherwise the store is refilled with the balls of the new
+ * keyframe and the caller has to recreate its views of them.
+ */
+public class RecordingReader implements Closeable {
+
+    private final FileChannel channel;
+    private final double framesPerSecond;
+    private final long[] frameOffsets;
+    private final Snapshot snapshot = new Snapshot();
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(0);
+    private long loadedKeyframe = -1;
+    private double frameSeconds;
+    private double width;
+    private double height;
+
+    /**
+     * Opens a recording and reads its index, or rebuilds the index if the recording was never closed.
+     *
+     * @param path is the file written by a SimulationRecorder
+     * @throws IOException if the file cannot be read or is not a recording
+     */
+    public RecordingReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        ByteBuffer header = read(0, SimulationRecorder.HEADER_BYTES);
+        if (header.getLong() != SimulationRecorder.MAGIC) {
+            channel.close();
+            throw new IOException(path + " is not a recording");
+        }
+        int version = header.getInt();
+        if (version != SimulationRecorder.VERSION) {
+            channel.close();
+            throw new IOException(path + " is a version " + version + " recording, expected version " + SimulationRecorder.VERSION);
+        }
+        header.getInt();
+        this.framesPerSecond = header.getDouble();
+        long indexOffset = header.getLong();
+        long frameCount = header.getLong();
+        this.frameOffsets = indexOffset != 0 ? readIndex(indexOffset, frameCount) : rebuildIndex();
+    }
+
+    private long[] readIndex(long indexOffset, long frameCount) throws IOException {
+        long[] offsets = new long[(int) frameCount];
+        read(indexOffset, frameCount * Long.BYTES).asLongBuffer().get(offsets);
+        return offsets;
+    }
+
+    /**
+     * Walks the records from the end of the header, noting the offset of every frame, until the zeros past the last
+     * record or the end of the file.
+     */
+    private long[] rebuildIndex() throws IOException {
+        long[] offsets = new long[1024];
+        int frameCount = 0;
+        long position = SimulationRecorder.HEADER_BYTES;
+        long size = channel.size();
+        while (position + SimulationRecorder.KEYFRAME_HEADER_BYTES <= size) {
+            ByteBuffer recordHeader = read(position, SimulationRecorder.KEYFRAME_HEADER_BYTES);
+            int type = recordHeader.getInt();
+            int ballCount = recordHeader.getInt();
+            if (type == SimulationRecorder.KEYFRAME) {
+                position += SimulationRecorder.keyframeBytes(ballCount);
+            } else if (type == SimulationRecorder.FRAME && position + SimulationRecorder.frameBytes(ballCount) <= size) {
+                if (frameCount == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                }
+                offsets[frameCount++] = position;
+                position += SimulationRecorder.frameBytes(ballCount);
+            } else {
+                break;
+            }
+        }
+        return Arrays.copyOf(offsets, frameCount);
+    }
+
+    /**
+     * Loads the given frame into the simulation and into the snapshot returned by getSnapshot.
+     *
+     * @param frame      is the number of the frame, from zero to getFrameCount() - 1
+     * @param simulation is the simulation whose balls are overwritten
+     * @return true if the balls were replaced by those of another keyframe, in which case every view of the old balls
+     * has to be recreated, or false if only their state changed
+     * @throws IOException if the frame cannot be read
+     */
+    public boolean loadFrame(long frame, Simulation simulation) throws IOException {
+        long frameOffset = frameOffsets[(int) frame];
+        ByteBuffer recordHeader = read(frameOffset, SimulationRecorder.FRAME_HEADER_BYTES);
+        recordHeader.getInt();
+        int ballCount = recordHeader.getInt();
+        long keyframeOffset = recordHeader.getLong();
+        frameSeconds = recordHeader.getDouble();
+        width = recordHeader.getDouble();
+        height = recordHeader.getDouble();
+
+        BallStore store = simulation.getStore();
+        ChangeBuffer changes = simulation.getChanges();
+        boolean isNewKeyframe = keyframeOffset != loadedKeyframe;
+        if (isNewKeyframe) {
+            ByteBuffer shapes = read(keyframeOffset + SimulationRecorder.KEYFRAME_HEADER_BYTES, SimulationRecorder.keyframeBytes(ballCount) - SimulationRecorder.KEYFRAME_HEADER_BYTES);
+            changes.clear();
+            store.readShapes(ballCount, shapes);
+            changes.ensureCapacity(ballCount);
+            loadedKeyframe = keyframeOffset;
+        }
+        ByteBuffer state = read(frameOffset + SimulationRecorder.FRAME_HEADER_BYTES, SimulationRecorder.frameBytes(ballCount) - SimulationRecorder.FRAME_HEADER_BYTES);
+        store.readMotion(state);
+        store.readAppearance(state, isNewKeyframe ? null : changes);
+        snapshot.capturePrevious(store);
+        snapshot.captureCurrent(store, snapshot.getSequence() + 1, System.nanoTime(), 1);
+        return isNewKeyframe;
+    }
+
+    /**
+     * Reads the given number of bytes at the given offset into the reusable direct buffer, growing it if needed.
+     *
+     * @return the buffer, positioned at the start of what was read
+     */
+    private ByteBuffer read(long offset, long bytes) throws IOException {
+        if (buffer.capacity() < bytes) {
+            buffer = ByteBuffer.allocateDirect((int) Math.max(bytes, buffer.capacity() * 2L));
+        }
+        buffer.clear().limit((int) bytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("The recording ends in the middle of a record");
+            }
+        }
+        return buffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Below are simple getters for the recording and for the frame loaded last. The snapshot holds the positions of
+     * the balls in that frame, with no step to interpolate across, so it draws the same at any alpha.
+     */
+
+    public long getFrameCount() {
+        return frameOffsets.length;
+    }
+
+    public double getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public double getFrameSeconds() {
+        return frameSeconds;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+}
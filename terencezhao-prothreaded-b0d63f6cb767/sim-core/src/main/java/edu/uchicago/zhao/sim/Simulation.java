@@ -0,0 +1,240 @@
+package edu.uchicago.zhao.sim;
+
+/**
+ * The Simulation is the model the physics owns. It holds the BallStore along with the size of the world the balls
+ * bounce in, and advances both one step at a time. Changes the views need to show, such as a ball changing color,
+ * are recorded in a ChangeBuffer which the JavaFX application thread applies once per pulse.
+ * <p>
+ * Nothing in a step reads or writes the scene graph. The size of the world is handed to the simulation by the pane's
+ * size listeners rather than read from the pane, and the positions in the store are only pushed to the views by a
+ * separate sync step on the JavaFX application thread. This lets a step run on any thread, as long as only one step
+ * runs at a time and the sync step and the creation of new balls wait for it to finish. A SimulationLoop does exactly
+ * that on a thread of its own, and hands the positions to the renderer as Snapshots.
+ * <p>
+ * A step is split into as many equal sub-steps as it takes for the fastest ball to move no more than courantNumber
+ * times the radius of the smallest ball in each of them, up to maxSubsteps. This is the CFL condition of a
+ * simulation on a grid, with the smallest ball as the grid: a step in which balls move a large part of their own size
+ * lets a ball meet several others in that step, which are then resolved one after the other from positions none of
+ * them really had. A quiet scene is stepped in a single sub-step and costs nothing extra, while a fast scene spends
+ * as many collision passes as its speed calls for. How many sub-steps the last step took is kept in lastSubsteps, and
+ * the phase timings are recorded once for every sub-step.
+ * <p>
+ * Every step is reported to Java Flight Recorder as a StepEvent, and a step that resolves at least stormThreshold
+ * contacts is also reported as a CollisionStormEvent.
+ */
+public class Simulation {
+
+    public static final long DEFAULT_STORM_THRESHOLD = 1000;
+
+    public static final double DEFAULT_COURANT_NUMBER = 0.5;
+
+    public static final int DEFAULT_MAX_SUBSTEPS = 16;
+
+    private final BallStore store = new BallStore();
+    private final ChangeBuffer changes = new ChangeBuffer();
+    private volatile double width;
+    private volatile double height;
+    private double clampedWidth;
+    private double clampedHeight;
+    private volatile long stormThreshold = DEFAULT_STORM_THRESHOLD;
+    private volatile double courantNumber = DEFAULT_COURANT_NUMBER;
+    private volatile int maxSubsteps = DEFAULT_MAX_SUBSTEPS;
+    private volatile int lastSubsteps = 1;
+
+    /**
+     * Sets the size of the world. The change is picked up at the start of the next step, which may be running on a
+     * different thread, so this is safe to call from the pane's size listeners at any time.
+     *
+     * @param width  is the width of the world
+     * @param height is the height of the world
+     */
+    public void setBounds(double width, double height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Advances the simulation by the given amount of time. If the world shrank since the last step, balls left beyond
+     * the new right or bottom edge are first pulled back inside. The step is then split into sub-steps, and in each
+     * of them collisions are handled and every ball is moved along its velocity. The statistics recorded for the
+     * step are those of all its sub-steps added up.
+     *
+     * @param seconds is the amount of time to advance
+     */
+    public void step(double seconds) {
+        StepEvent event = new StepEvent();
+        event.begin();
+        prepareStep();
+        int substeps = substepsFor(seconds);
+        double substepSeconds = seconds / substeps;
+        BroadPhaseStats stats = BroadPhaseStats.EMPTY;
+        long wallHits = 0;
+        for (int substep = 0; substep < substeps; substep++) {
+            CollisionHandler.handleCollisions(store, changes, clampedWidth, clampedHeight, substepSeconds);
+            stats = stats.plus(CollisionHandler.getLastStats());
+            wallHits += CollisionHandler.getLastWallHits();
+            long integrationStart = System.nanoTime();
+            store.advance(substepSeconds);
+            FrameTimings.record(FrameTimings.Phase.INTEGRATION, System.nanoTime() - integrationStart);
+        }
+        CollisionHandler.recordStats(stats);
+        event.end();
+        commitStepEvents(event, stats, wallHits, substeps);
+    }
+
+    /**
+     * Works out how many sub-steps a step of the given length needs for the fastest ball to move at most
+     * courantNumber times the smallest radius in each of them. Steppers that split their steps call this right after
+     * prepareStep, so that they split them exactly as step does.
+     *
+     * @param seconds is the length of the whole step
+     * @return the number of sub-steps, from one up to maxSubsteps
+     */
+    int substepsFor(double seconds) {
+        double minRadius = store.minRadius();
+        double maxTravel = courantNumber * minRadius;
+        if (maxTravel <= 0) {
+            return 1;
+        }
+        double substeps = Math.ceil(store.maxSpeed() * seconds / maxTravel);
+        return (int) Math.max(1, Math.min(maxSubsteps, substeps));
+    }
+
+    /**
+     * Notes how many sub-steps the step took, fills in and commits the StepEvent of a step that has just ended, and
+     * commits a CollisionStormEvent as well if the step resolved at least stormThreshold contacts. Steppers that
+     * handle the collisions themselves call this at the end of each step with an event they began before calling
+     * prepareStep.
+     *
+     * @param event    is the event of the step, already ended
+     * @param stats    is what the broad phase and the contacts of the step counted
+     * @param wallHits is the number of balls that bounced off a wall during the step
+     * @param substeps is the number of sub-steps the step was split into
+     */
+    void commitStepEvents(StepEvent event, BroadPhaseStats stats, long wallHits, int substeps) {
+        lastSubsteps = substeps;
+        if (event.shouldCommit()) {
+            event.ballCount = store.size();
+            event.candidatePairs = stats.getCandidatePairs();
+            event.contacts = stats.getContacts();
+            event.wallHits = wallHits;
+            event.substeps = substeps;
+            event.commit();
+        }
+        long threshold = stormThreshold;
+        if (stats.getContacts() >= threshold) {
+            CollisionStormEvent storm = new CollisionStormEvent();
+            if (storm.shouldCommit()) {
+                storm.contacts = stats.getContacts();
+                storm.ballCount = store.size();
+                storm.threshold = threshold;
+                storm.commit();
+            }
+        }
+    }
+
+    /**
+     * Picks up the size of the world for the coming step, pulling balls back inside if it shrank, and makes room in
+     * the change buffer for every ball. Steppers that handle the collisions themselves call this first, and then use
+     * getStepWidth and getStepHeight as the size of the world.
+     */
+    void prepareStep() {
+        double currentWidth = width;
+        double currentHeight = height;
+        if (currentWidth < clampedWidth || currentHeight < clampedHeight) {
+            clampToBounds(currentWidth, currentHeight);
+        }
+        clampedWidth = currentWidth;
+        clampedHeight = currentHeight;
+        changes.ensureCapacity(store.size());
+    }
+
+    /**
+     * Removes every ball from the simulation along with any changes still waiting to be applied to their views.
+     */
+    public void clear() {
+        store.clear();
+        changes.clear();
+    }
+
+    private void clampToBounds(double currentWidth, double currentHeight) {
+        for (int i = 0; i < store.size(); i++) {
+            double maxX = currentWidth - store.getRadius(i);
+            double maxY = currentHeight - store.getRadius(i);
+            if (store.getX(i) > maxX) {
+                store.setX(i, maxX);
+            }
+            if (store.getY(i) > maxY) {
+                store.setY(i, maxY);
+            }
+        }
+    }
+
+    /**
+     * Below are simple getters for the state of the simulation.
+     */
+
+    public BallStore getStore() {
+        return store;
+    }
+
+    public ChangeBuffer getChanges() {
+        return changes;
+    }
+
+    public long getStormThreshold() {
+        return stormThreshold;
+    }
+
+    /**
+     * @param stormThreshold is the number of contacts in a single step from which a CollisionStormEvent is reported
+     */
+    public void setStormThreshold(long stormThreshold) {
+        this.stormThreshold = stormThreshold;
+    }
+
+    public double getCourantNumber() {
+        return courantNumber;
+    }
+
+    /**
+     * @param courantNumber is how many times the radius of the smallest ball the fastest ball may move in a sub-step
+     */
+    public void setCourantNumber(double courantNumber) {
+        this.courantNumber = courantNumber;
+    }
+
+    public int getMaxSubsteps() {
+        return maxSubsteps;
+    }
+
+    /**
+     * @param maxSubsteps is the most sub-steps a step is split into, where one turns sub-stepping off
+     */
+    public void setMaxSubsteps(int maxSubsteps) {
+        this.maxSubsteps = Math.max(1, maxSubsteps);
+    }
+
+    /**
+     * @return the number of sub-steps the last step was split into
+     */
+    public int getLastSubsteps() {
+        return lastSubsteps;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    double getStepWidth() {
+        return clampedWidth;
+    }
+
+    double getStepHeight() {
+        return clampedHeight;
+    }
+}
@@ -0,0 +1,217 @@
+package edu.uchicago.zhao.sim;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The SimulationLoop steps a Simulation on its own thread at a fixed rate, independent of how often the balls are
+ * drawn. Every step advances the simulation by exactly the same amount of time, so a slow frame on the JavaFX
+ * application thread no longer turns into one large step in which fast balls pass through each other, and the
+ * physics may use a whole core rather than whatever is left of the pulse.
+ * <p>
+ * After every step the positions of the balls before and after it are published in a Snapshot. The snapshots are
+ * passed through three buffers: the simulation thread fills its back buffer and swaps it with the middle one, and
+ * the renderer swaps its front buffer with the middle one whenever the middle holds a newer step. Neither side ever
+ * waits for the other, nothing is allocated once the buffers are big enough, and the renderer always sees a complete
+ * step. The renderer interpolates between the two positions in its snapshot, so the balls move smoothly whether it
+ * draws more or fewer frames than there are steps.
+ * <p>
+ * If a step takes longer than its share of time, the loop runs the steps that are due back to back to catch up, but
+ * never more than MAX_CATCH_UP_STEPS of them. Past that the simulation is allowed to fall behind the clock instead,
+ * so that a scene too heavy to simulate in real time slows down rather than locking up the loop.
+ * <p>
+ * If a SimulationRecorder is set, it is handed every step right after it is taken, on the simulation thread, so that
+ * recording never holds up the JavaFX application thread.
+ * <p>
+ * The steps are taken by Simulation.step unless a Stepper is set, such as an EventDrivenStepper, in which case the
+ * loop hands every step to the stepper instead.
+ */
+public class SimulationLoop {
+
+    private static final int MAX_CATCH_UP_STEPS = 5;
+
+    private final Simulation simulation;
+    private final ReentrantLock stepLock = new ReentrantLock();
+    private final AtomicReference<Snapshot> middle = new AtomicReference<>(new Snapshot());
+    private Snapshot back = new Snapshot();
+    private Snapshot front = new Snapshot();
+    private long sequence;
+    private volatile double stepsPerSecond;
+    private volatile boolean running;
+    private volatile SimulationRecorder recorder;
+    private volatile Stepper stepper;
+    private Thread thread;
+
+    /**
+     * @param simulation     is the simulation to step
+     * @param stepsPerSecond is how many fixed steps to take every second
+     */
+    public SimulationLoop(Simulation simulation, double stepsPerSecond) {
+        this.simulation = simulation;
+        this.stepsPerSecond = stepsPerSecond;
+    }
+
+    /**
+     * Starts the simulation thread. The thread is a daemon so that it never keeps the application alive.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the simulation thread and waits for the step it is taking to finish.
+     */
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /**
+     * Runs the given action on the calling thread while no step is being taken, for example to replace the balls
+     * in the store. A snapshot of the balls as the action left them is published right after it, so the renderer
+     * does not have to wait for the next step to see them.
+     *
+     * @param action is the change to make to the simulation
+     */
+    public void runPaused(Runnable action) {
+        stepLock.lock();
+        try {
+            action.run();
+            BallStore store = simulation.getStore();
+            back.capturePrevious(store);
+            publish(store);
+        } finally {
+            stepLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the snapshot of the most recent step. This must only be called from a single thread, normally the
+     * JavaFX application thread, and the returned snapshot may be reused once this is called again.
+     *
+     * @return the snapshot of the latest step published by the simulation thread
+     */
+    public Snapshot latestSnapshot() {
+        if (middle.get().getSequence() > front.getSequence()) {
+            front = middle.getAndSet(front);
+        }
+        return front;
+    }
+
+    private void run() {
+        long nextStep = System.nanoTime();
+        while (running) {
+            long stepNanos = stepNanos();
+            long now = System.nanoTime();
+            if (now - nextStep > MAX_CATCH_UP_STEPS * stepNanos) {
+                nextStep = now - MAX_CATCH_UP_STEPS * stepNanos;
+            }
+            while (running && now - nextStep >= 0) {
+                step(stepNanos);
+                nextStep += stepNanos;
+                now = System.nanoTime();
+            }
+            LockSupport.parkNanos(nextStep - now);
+        }
+    }
+
+    private void step(long stepNanos) {
+        stepLock.lock();
+        try {
+            BallStore store = simulation.getStore();
+            back.capturePrevious(store);
+            Stepper currentStepper = stepper;
+            if (currentStepper != null) {
+                currentStepper.step(stepNanos / 1e9);
+            } else {
+                simulation.step(stepNanos / 1e9);
+            }
+            record(stepNanos / 1e9);
+            publish(store);
+        } finally {
+            stepLock.unlock();
+        }
+    }
+
+    /**
+     * Hands the step to the recorder, if there is one. A recorder that fails is dropped, so that a full disk stops the
+     * recording rather than the simulation.
+     */
+    private void record(double seconds) {
+        SimulationRecorder currentRecorder = recorder;
+        if (currentRecorder != null) {
+            try {
+                currentRecorder.stepped(simulation, seconds);
+            } catch (IOException e) {
+                e.printStackTrace();
+                recorder = null;
+            }
+        }
+    }
+
+    /**
+     * Completes the back buffer with the current positions and swaps it into the middle, taking back whichever
+     * snapshot the middle held. Only called while holding the step lock.
+     */
+    private void publish(BallStore store) {
+        back.captureCurrent(store, ++sequence, System.nanoTime(), stepNanos());
+        back = middle.getAndSet(back);
+    }
+
+    private long stepNanos() {
+        return Math.max(1, Math.round(1e9 / stepsPerSecond));
+    }
+
+    /**
+     * Below are simple getters and setters for the step rate. A new rate takes effect from the next step.
+     */
+
+    public double getStepsPerSecond() {
+        return stepsPerSecond;
+    }
+
+    public void setStepsPerSecond(double stepsPerSecond) {
+        this.stepsPerSecond = stepsPerSecond;
+    }
+
+    public SimulationRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * @param recorder is the recorder to hand every step to from the next step on, or null to stop recording. The loop
+     *                 never closes it.
+     */
+    public void setRecorder(SimulationRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public Stepper getStepper() {
+        return stepper;
+    }
+
+    /**
+     * @param stepper is the stepper to take every step with from the next step on, or null to go back to
+     *                Simulation.step. The loop never shuts it down.
+     */
+    public void setStepper(Stepper stepper) {
+        this.stepper = stepper;
+    }
+}
@@ -0,0 +1,193 @@
+package edu.uchicago.zhao.sim;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The SimulationRecorder appends the state of every ball to a file at a fixed rate of frames per second of simulated
+ * time, so that a run can be replayed later by a RecordingReader without running the physics.
+ * <p>
+ * The file is written through memory mapped regions of REGION_BYTES each rather than through write calls. Writing a
+ * frame is then a handful of bulk copies from the BallStore arrays into memory, which the operating system writes
+ * out in the background, so recording a hundred thousand balls at 60 frames per second costs the simulation thread a
+ * few milliseconds a second and never waits for the disk. When a frame does not fit in what is left of the current
+ * region, the next region is mapped starting at that frame.
+ * <p>
+ * The file is a header followed by records, every one of which starts on a multiple of eight bytes:
+ * <ul>
+ * <li>the header holds MAGIC, VERSION, the number of frames per second, and the offset of the index and the number
+ * of frames, both zero until the recorder is closed,</li>
+ * <li>a keyframe record holds the number of balls and the radius and mass of every ball. One is written before the
+ * first frame and again whenever the set of balls changes, for example when a click spawns a new set,</li>
+ * <li>a frame record holds the number of balls, the offset of the keyframe it belongs to, the simulated time and the
+ * size of the world, followed by the x, y and velocities of every ball and the packed color and blur of every
+ * ball,</li>
+ * <li>the index, written when the recorder is closed, holds the offset of every frame record in order.</li>
+ * </ul>
+ * Since every frame holds the complete state of every ball and points at its own keyframe, any frame can be loaded by
+ * reading just those two records, wherever it is in the file. If the recorder was never closed, the reader rebuilds
+ * the index by walking the records.
+ * <p>
+ * Everything is written little endian, which is the native order on the machines this runs on, so the bulk copies
+ * are plain memory copies. A recorder must only be used from one thread, normally the simulation thread.
+ */
+public class SimulationRecorder implements Closeable {
+
+    static final long MAGIC = 0x4242524543303031L;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 40;
+    static final int INDEX_OFFSET_POSITION = 24;
+    static final int KEYFRAME = 1;
+    static final int FRAME = 2;
+    static final int KEYFRAME_HEADER_BYTES = 8;
+    static final int FRAME_HEADER_BYTES = 40;
+
+    private static final long REGION_BYTES = 256L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final double framesPerSecond;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long position = HEADER_BYTES;
+    private long[] frameOffsets = new long[1024];
+    private long frameCount;
+    private long keyframeOffset = -1;
+    private long keyframeGeneration;
+    private double recordedSeconds;
+    private double secondsSinceFrame;
+
+    /**
+     * Creates the file, replacing any file already at the given path, and writes its header.
+     *
+     * @param path            is the file to record to
+     * @param framesPerSecond is how many frames to record for every second of simulated time
+     * @throws IOException if the file cannot be created
+     */
+    public SimulationRecorder(Path path, double framesPerSecond) throws IOException {
+        this.framesPerSecond = framesPerSecond;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(MAGIC).putInt(VERSION).putInt(0).putDouble(framesPerSecond).putLong(0).putLong(0).flip();
+        channel.write(header, 0);
+    }
+
+    /**
+     * Tells the recorder that the simulation has advanced by the given amount of time. A frame is written once at
+     * least a frame's worth of simulated time has passed since the last one, and always for the first step. Steps
+     * longer than a frame still only write one frame each.
+     *
+     * @param simulation is the simulation that was stepped
+     * @param seconds    is the length of the step
+     * @throws IOException if the next region of the file cannot be mapped
+     */
+    public void stepped(Simulation simulation, double seconds) throws IOException {
+        double frameSeconds = 1 / framesPerSecond;
+        recordedSeconds += seconds;
+        secondsSinceFrame += seconds;
+        if (frameCount == 0 || secondsSinceFrame >= frameSeconds) {
+            secondsSinceFrame = Math.min(Math.max(0, secondsSinceFrame - frameSeconds), frameSeconds);
+            writeFrame(simulation);
+        }
+    }
+
+    /**
+     * Writes the state of every ball as a frame, preceded by a keyframe if the set of balls changed since the last one.
+     */
+    private void writeFrame(Simulation simulation) throws IOException {
+        BallStore store = simulation.getStore();
+        int ballCount = store.size();
+        if (keyframeOffset < 0 || store.getGeneration() != keyframeGeneration) {
+            keyframeOffset = position;
+            keyframeGeneration = store.getGeneration();
+            ByteBuffer buffer = reserve(keyframeBytes(ballCount));
+            buffer.putInt(KEYFRAME).putInt(ballCount);
+            store.writeShapes(buffer);
+        }
+        long frameOffset = position;
+        ByteBuffer buffer = reserve(frameBytes(ballCount));
+        buffer.putInt(FRAME).putInt(ballCount).putLong(keyframeOffset).putDouble(recordedSeconds)
+                .putDouble(simulation.getStepWidth()).putDouble(simulation.getStepHeight());
+        store.writeMotion(buffer);
+        store.writeAppearance(buffer);
+        if (frameCount == frameOffsets.length) {
+            frameOffsets = Arrays.copyOf(frameOffsets, frameOffsets.length * 2);
+        }
+        frameOffsets[(int) frameCount++] = frameOffset;
+    }
+
+    /**
+     * Makes room for a record of the given size at the end of the file, mapping a new region if the current one is too
+     * small, and moves the end of the file past it.
+     *
+     * @return the mapped region, positioned at the start of the record
+     */
+    private ByteBuffer reserve(long bytes) throws IOException {
+        if (region == null || position + bytes > regionStart + region.capacity()) {
+            regionStart = position;
+            region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, Math.max(REGION_BYTES, bytes));
+            region.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        region.position((int) (position - regionStart));
+        position += bytes;
+        return region;
+    }
+
+    /**
+     * Writes the index after the last record, fills in the header and cuts off the unused end of the last region.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            long indexOffset = position;
+            ByteBuffer index = ByteBuffer.allocate((int) frameCount * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            index.asLongBuffer().put(frameOffsets, 0, (int) frameCount);
+            channel.write(index, indexOffset);
+            ByteBuffer trailer = ByteBuffer.allocate(2 * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            trailer.putLong(indexOffset).putLong(frameCount).flip();
+            channel.write(trailer, INDEX_OFFSET_POSITION);
+            region = null;
+            try {
+                channel.truncate(indexOffset + frameCount * Long.BYTES);
+            } catch (IOException e) {
+                // Some platforms refuse to shrink a file that is still mapped, which only leaves zeros at the end.
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    static long keyframeBytes(int ballCount) {
+        return KEYFRAME_HEADER_BYTES + 2L * Double.BYTES * ballCount;
+    }
+
+    /**
+     * @return the size of a frame record, rounded up so that the next record starts on a multiple of eight bytes
+     */
+    static long frameBytes(int ballCount) {
+        long bytes = FRAME_HEADER_BYTES + 4L * Double.BYTES * ballCount + (long) Integer.BYTES * ballCount;
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * Below are simple getters for what has been recorded so far.
+     */
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public double getFramesPerSecond() {
+        return framesPerSecond;
+    }
+}
@@ -0,0 +1,97 @@
+package edu.uchicago.zhao.sim;
+
+import java.util.Arrays;
+
+/**
+ * A Snapshot holds the positions of every ball at the start and at the end of one fixed step of the simulation, so
+ * that a renderer can draw the balls anywhere in between without reading the BallStore while the next step is
+ * changing it.
+ * <p>
+ * Snapshots are handed from the simulation thread to the renderer by the SimulationLoop, which recycles a few of
+ * them rather than allocating a new one for every step. A snapshot is only written by the simulation thread before
+ * it is published, and is never written again until the renderer has handed it back, so the renderer may read it
+ * freely in between.
+ */
+public class Snapshot {
+
+    private double[] previousX = new double[0];
+    private double[] previousY = new double[0];
+    private double[] x = new double[0];
+    private double[] y = new double[0];
+    private int size;
+    private long sequence;
+    private long publishedNanos;
+    private long stepNanos = 1;
+
+    /**
+     * Copies the positions of the balls before the step is taken.
+     */
+    void capturePrevious(BallStore store) {
+        if (previousX.length < store.size()) {
+            int capacity = Math.max(store.size(), previousX.length * 2);
+            previousX = Arrays.copyOf(previousX, capacity);
+            previousY = Arrays.copyOf(previousY, capacity);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+        }
+        store.copyPositions(previousX, previousY);
+    }
+
+    /**
+     * Copies the positions of the balls once the step has been taken and stamps the snapshot.
+     *
+     * @param sequence       is the number of the step, which increases by one every step
+     * @param publishedNanos is the System.nanoTime at which the step finished
+     * @param stepNanos      is the length of the step
+     */
+    void captureCurrent(BallStore store, long sequence, long publishedNanos, long stepNanos) {
+        store.copyPositions(x, y);
+        this.size = store.size();
+        this.sequence = sequence;
+        this.publishedNanos = publishedNanos;
+        this.stepNanos = stepNanos;
+    }
+
+    /**
+     * The renderer draws the balls one step behind the simulation, so that there is always a later position to
+     * interpolate towards. A step that finished just now is drawn at its start, and one that finished a whole step
+     * ago is drawn at its end.
+     *
+     * @param nanos is the System.nanoTime at which the balls are drawn
+     * @return how far through this step the balls should be drawn, between 0 and 1
+     */
+    public double alphaAt(long nanos) {
+        double alpha = (double) (nanos - publishedNanos) / stepNanos;
+        return Math.max(0, Math.min(1, alpha));
+    }
+
+    /**
+     * @return the x coordinate of the ball the given fraction of the way through the step
+     */
+    public double getX(int ball, double alpha) {
+        return previousX[ball] + (x[ball] - previousX[ball]) * alpha;
+    }
+
+    /**
+     * @return the y coordinate of the ball the given fraction of the way through the step
+     */
+    public double getY(int ball, double alpha) {
+        return previousY[ball] + (y[ball] - previousY[ball]) * alpha;
+    }
+
+    /**
+     * Below are simple getters for the stamp of the snapshot.
+     */
+
+    public int size() {
+        return size;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getPublishedNanos() {
+        return publishedNanos;
+    }
+}
@@ -0,0 +1,122 @@
+package edu.uchicago.zhao.sim;
+
+import java.util.Arrays;
+/**
+ * The SpatialHashGrid is a uniform grid broad phase used to find which pairs of balls are close enough to possibly
+ * be colliding, so that only those pairs are handed to the more expensive narrow phase collision check.
+ * <p>
+ * Every frame, the pane is divided into square cells whose side is the diameter of the largest ball. Two balls can only
+ * touch if the distance between their centers is at most the sum of their radii, which is never more than one cell, so
+ * a ball only needs to be compared against balls in its own cell and the eight cells surrounding it. When looking for
+ * pairs that may meet during a step, the reach of each ball takes the place of its radius, so a single very fast ball
+ * makes every cell larger.
+ * <p>
+ * Cells are not stored in a map. Instead, each cell coordinate is hashed to a primitive int bucket of a fixed size
+ * table and the balls are counting sorted by bucket into a single int array. This keeps the whole structure in a
+ * handful of primitive arrays which are reused between frames, so building the grid is linear in the number of balls
+ * and does not box a single key.
+ */
+public class SpatialHashGrid implements BroadPhase {
+
+    private int[] cellX = new int[0];
+    private int[] cellY = new int[0];
+    private int[] bucketOfBall = new int[0];
+    private int[] sortedBalls = new int[0];
+    private int[] bucketStart = new int[1];
+    private final int[] neighbourBuckets = new int[9];
+
+    /**
+     * Places every ball in the grid and adds each pair of balls that share a cell or sit in neighbouring cells to the
+     * given pair list. Each unordered pair is added once, with the lower ball index first.
+     *
+     * @param store       is the store of balls to place in the grid
+     * @param worldWidth  is the width of the pane the balls bounce in, which the grid does not need
+     * @param worldHeight is the height of the pane the balls bounce in, which the grid does not need
+     * @param seconds     is the length of the step, or zero to only find the pairs touching now
+     * @param pairs       is the list the candidate pairs will be appended to
+     */
+    public void findPairs(BallStore store, double worldWidth, double worldHeight, double seconds, PairList pairs) {
+        int ballCount = store.size();
+        if (ballCount < 2) {
+            return;
+        }
+        ensureCapacity(ballCount);
+        double cellSize = Math.max(2 * store.maxReach(seconds), 1);
+        int tableSize = Integer.highestOneBit(2 * ballCount - 1) << 1;
+        int mask = tableSize - 1;
+        if (bucketStart.length < tableSize + 1) {
+            bucketStart = new int[tableSize + 1];
+        } else {
+            Arrays.fill(bucketStart, 0, tableSize + 1, 0);
+        }
+
+        for (int i = 0; i < ballCount; i++) {
+            cellX[i] = (int) Math.floor(store.getX(i) / cellSize);
+            cellY[i] = (int) Math.floor(store.getY(i) / cellSize);
+            bucketOfBall[i] = hash(cellX[i], cellY[i]) & mask;
+            bucketStart[bucketOfBall[i] + 1]++;
+        }
+        for (int bucket = 0; bucket < tableSize; bucket++) {
+            bucketStart[bucket + 1] += bucketStart[bucket];
+        }
+        // Counting sort the balls by bucket. The start offsets are shifted forward while filling and then restored.
+        for (int i = 0; i < ballCount; i++) {
+            sortedBalls[bucketStart[bucketOfBall[i]]++] = i;
+        }
+        for (int bucket = tableSize; bucket > 0; bucket--) {
+            bucketStart[bucket] = bucketStart[bucket - 1];
+        }
+        bucketStart[0] = 0;
+
+        for (int i = 0; i < ballCount; i++) {
+            int neighbourCount = collectNeighbourBuckets(cellX[i], cellY[i], mask);
+            for (int n = 0; n < neighbourCount; n++) {
+                int bucket = neighbourBuckets[n];
+                for (int k = bucketStart[bucket]; k < bucketStart[bucket + 1]; k++) {
+                    int j = sortedBalls[k];
+                    // Different cells can hash to the same bucket, so confirm the other ball really is a neighbour.
+                    if (j > i && Math.abs(cellX[j] - cellX[i]) <= 1 && Math.abs(cellY[j] - cellY[i]) <= 1) {
+                        pairs.add(i, j);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills the neighbour bucket array with the distinct buckets of the 3x3 block of cells centered on the given cell.
+     * Two of those nine cells may hash to the same bucket, in which case the bucket is only listed once so that no pair
+     * is reported twice.
+     *
+     * @return the number of distinct buckets written
+     */
+    private int collectNeighbourBuckets(int x, int y, int mask) {
+        int count = 0;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                int bucket = hash(x + dx, y + dy) & mask;
+                boolean isDuplicate = false;
+                for (int n = 0; n < count && !isDuplicate; n++) {
+                    isDuplicate = neighbourBuckets[n] == bucket;
+                }
+                if (!isDuplicate) {
+                    neighbourBuckets[count++] = bucket;
+                }
+            }
+        }
+        return count;
+    }
+
+    private void ensureCapacity(int ballCount) {
+        if (cellX.length < ballCount) {
+            cellX = new int[ballCount];
+            cellY = new int[ballCount];
+            bucketOfBall = new int[ballCount];
+            sortedBalls = new int[ballCount];
+        }
+    }
+
+    private static int hash(int x, int y) {
+        return (x * 73856093) ^ (y * 19349663);
+    }
+}
@@ -0,0 +1,43 @@
+package edu.uchicago.zhao.sim;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The StepEvent is a Java Flight Recorder event covering one step of the simulation, whichever engine ran it. Its
+ * duration is the time the step took, and its fields record how much work the step found, so a recording shows at a
+ * glance whether a slow step was slow because of the number of balls, the broad phase or a burst of contacts.
+ * <p>
+ * The event is only written while a recording has it enabled, for example when the application is started with
+ * -XX:StartFlightRecording, and costs next to nothing otherwise.
+ */
+@Name("edu.uchicago.zhao.sim.Step")
+@Label("Simulation Step")
+@Category({"Bouncing Balls", "Simulation"})
+@Description("One step of the simulation")
+@StackTrace(false)
+public class StepEvent extends Event {
+
+    @Label("Ball Count")
+    int ballCount;
+
+    @Label("Candidate Pairs")
+    @Description("Pairs of balls the broad phase found close enough to test for overlap")
+    int candidatePairs;
+
+    @Label("Contacts")
+    @Description("Pairs of balls that collided")
+    long contacts;
+
+    @Label("Wall Hits")
+    @Description("Balls that bounced off a wall")
+    long wallHits;
+
+    @Label("Sub-steps")
+    @Description("Number of sub-steps the step was split into so that no ball moved too far in one of them")
+    int substeps;
+}
@@ -0,0 +1,23 @@
+package edu.uchicago.zhao.sim;
+
+/**
+ * A Stepper advances a Simulation in its own way, rather than with Simulation.step, which runs the collision passes on
+ * the ForkJoinPool of the CollisionScheduler and resolves the contacts one ContactBatches batch at a time. Most
+ * implementations spread the work of a step across threads of their own in different ways, so that the threading
+ * models can be compared on the same scene, while the EventDrivenStepper replaces the time stepping altogether.
+ */
+public interface Stepper {
+
+    /**
+     * Advances the simulation by the given amount of time and returns once the step is complete.
+     * Only one thread may call this at a time.
+     *
+     * @param seconds is the amount of time to advance
+     */
+    void step(double seconds);
+
+    /**
+     * Lets the threads of the stepper exit, if it has any. The stepper cannot be used afterwards.
+     */
+    void shutdown();
+}
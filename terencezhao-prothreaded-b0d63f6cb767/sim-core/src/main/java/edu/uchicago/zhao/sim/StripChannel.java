@@ -0,0 +1,189 @@
+package edu.uchicago.zhao.sim;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A StripChannel carries the messages of a StripCoordinator and its StripWorkers over a local socket, between the
+ * coordinator and a worker or between two workers simulating neighbouring strips.
+ * <p>
+ * Every message is a type and a payload length, followed by the payload. Messages that hold balls write every ball as
+ * a fixed size record of BALL_BYTES: its id, its packed color and blur, and its position, velocity, radius and mass.
+ * Each channel keeps one direct buffer for sending and one for receiving, which grow as needed and are reused for
+ * every message, so a steady simulation exchanges its balls without allocating. Everything is little endian, as in
+ * recordings.
+ * <p>
+ * A channel is only used by one thread at a time, and a message received is only valid until the next one is.
+ */
+class StripChannel implements Closeable {
+
+    static final int HELLO = 1;
+    static final int SETUP = 2;
+    static final int SPAWN = 3;
+    static final int STEP = 4;
+    static final int RESULT = 5;
+    static final int GHOSTS = 6;
+    static final int MIGRANTS = 7;
+    static final int SHUTDOWN = 8;
+
+    static final int HEADER_BYTES = 2 * Integer.BYTES;
+    static final int BALL_BYTES = 2 * Integer.BYTES + 6 * Double.BYTES;
+
+    private final SocketChannel channel;
+    private ByteBuffer sendBuffer = allocate(64 * 1024);
+    private ByteBuffer receiveBuffer = allocate(64 * 1024);
+    private int receivedType;
+
+    StripChannel(SocketChannel channel) throws IOException {
+        this.channel = channel;
+        channel.socket().setTcpNoDelay(true);
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Starts a message, making sure the send buffer can hold a payload of the given size.
+     *
+     * @param type            is the type of the message
+     * @param maxPayloadBytes is the most the payload will hold
+     * @return the send buffer, positioned where the payload starts
+     */
+    ByteBuffer begin(int type, long maxPayloadBytes) {
+        long capacity = HEADER_BYTES + maxPayloadBytes;
+        if (sendBuffer.capacity() < capacity) {
+            sendBuffer = allocate((int) Math.max(capacity, sendBuffer.capacity() * 2L));
+        }
+        sendBuffer.clear();
+        sendBuffer.putInt(type).putInt(0);
+        return sendBuffer;
+    }
+
+    /**
+     * Fills in the length of the message begun last and writes it to the socket.
+     */
+    void send() throws IOException {
+        sendBuffer.putInt(Integer.BYTES, sendBuffer.position() - HEADER_BYTES);
+        sendBuffer.flip();
+        while (sendBuffer.hasRemaining()) {
+            channel.write(sendBuffer);
+        }
+    }
+
+    /**
+     * Sends a message without a payload.
+     */
+    void send(int type) throws IOException {
+        begin(type, 0);
+        send();
+    }
+
+    /**
+     * Reads the next message, whatever its type, which getReceivedType then returns.
+     *
+     * @return the receive buffer, holding the payload of the message
+     * @throws EOFException if the other side closed the socket
+     */
+    ByteBuffer receive() throws IOException {
+        readFully(HEADER_BYTES);
+        receivedType = receiveBuffer.getInt();
+        int payloadBytes = receiveBuffer.getInt();
+        return readFully(payloadBytes);
+    }
+
+    /**
+     * Reads the next message, which must be of the given type.
+     *
+     * @return the receive buffer, holding the payload of the message
+     * @throws IOException if the message is of another type or cannot be read
+     */
+    ByteBuffer receive(int type) throws IOException {
+        ByteBuffer payload = receive();
+        if (receivedType != type) {
+            throw new IOException("Expected a message of type " + type + " but received one of type " + receivedType);
+        }
+        return payload;
+    }
+
+    private ByteBuffer readFully(int bytes) throws IOException {
+        if (receiveBuffer.capacity() < bytes) {
+            receiveBuffer = allocate(Math.max(bytes, receiveBuffer.capacity() * 2));
+        }
+        receiveBuffer.clear().limit(bytes);
+        while (receiveBuffer.hasRemaining()) {
+            if (channel.read(receiveBuffer) < 0) {
+                throw new EOFException("The other side of the strip channel closed it");
+            }
+        }
+        return receiveBuffer.flip();
+    }
+
+    int getReceivedType() {
+        return receivedType;
+    }
+
+    /**
+     * Writes the ball at the given index of the store as a ball record.
+     */
+    static void putBall(ByteBuffer buffer, BallStore store, int ball, int id) {
+        buffer.putInt(id)
+                .putInt((store.getColorIndex(ball) << 1) | (store.isBlurred(ball) ? 1 : 0))
+                .putDouble(store.getX(ball))
+                .putDouble(store.getY(ball))
+                .putDouble(store.getXVelocity(ball))
+                .putDouble(store.getYVelocity(ball))
+                .putDouble(store.getRadius(ball))
+                .putDouble(store.getMass(ball));
+    }
+
+    /**
+     * Reads a ball record and appends the ball to the store.
+     *
+     * @return the id of the ball
+     */
+    static int addBall(ByteBuffer buffer, BallStore store) {
+        int id = buffer.getInt();
+        int appearance = buffer.getInt();
+        double x = buffer.getDouble();
+        double y = buffer.getDouble();
+        double xVelocity = buffer.getDouble();
+        double yVelocity = buffer.getDouble();
+        double radius = buffer.getDouble();
+        double mass = buffer.getDouble();
+        int ball = store.add(x, y, radius, xVelocity, yVelocity, mass, appearance >> 1);
+        store.setBlurred(ball, (appearance & 1) != 0);
+        return id;
+    }
+
+    /**
+     * Reads a ball record and writes its motion and appearance over the ball whose index in the store is its id,
+     * recording a change of color or blur in the given ChangeBuffer. The radius and mass in the record are skipped,
+     * since they never change.
+     */
+    static void readBallInto(ByteBuffer buffer, BallStore store, ChangeBuffer changes) {
+        int ball = buffer.getInt();
+        int appearance = buffer.getInt();
+        store.setX(ball, buffer.getDouble());
+        store.setY(ball, buffer.getDouble());
+        store.setXVelocity(ball, buffer.getDouble());
+        store.setYVelocity(ball, buffer.getDouble());
+        buffer.position(buffer.position() + 2 * Double.BYTES);
+        int colorIndex = appearance >> 1;
+        boolean isBlurred = (appearance & 1) != 0;
+        if (colorIndex != store.getColorIndex(ball) || isBlurred != store.isBlurred(ball)) {
+            store.setColorIndex(ball, colorIndex);
+            store.setBlurred(ball, isBlurred);
+            changes.recordAppearance(ball, colorIndex, isBlurred);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,231 @@
+package edu.uchicago.zhao.sim;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The StripCoordinator steps a Simulation by splitting the world into vertical strips of equal width and handing each
+ * strip to a StripWorker running in a JVM of its own. The workers simulate their strips with the same physics as the
+ * other engines and trade the balls near and across their edges with each other directly, and the coordinator only
+ * tells them when to step and merges the balls they send back into the store of the simulation, where the client draws
+ * them as usual.
+ * <p>
+ * The coordinator starts the workers itself, with the same java and class path as the JVM it runs in, and talks to
+ * them and they to each other over sockets on the loopback interface. The workers keep the balls between steps, so the
+ * coordinator only sends balls out when the set of balls or the size of the world changed, which means a restart or a
+ * resize. Each ball keeps its index in the store as its id wherever it travels, so the results can be written straight
+ * back into place.
+ * <p>
+ * Every step, the coordinator works out the ghost margin, twice the furthest any ball can reach during the step, and
+ * sends it to the workers, which copy their balls within the margin of an edge to the neighbour on the other side. The
+ * results only match those of a single JVM as long as a strip is at least twice as wide as the margin, so when the
+ * strips are too narrow for the balls, because there are too many strips, the balls are too large or too fast or the
+ * window too small, the coordinator steps the simulation itself with Simulation.step until they are wide enough again.
+ * If a worker fails, the coordinator stops the others and steps the simulation itself from then on.
+ * <p>
+ * Contacts across an edge are resolved in the order of the ids of their balls, and those within a strip after them,
+ * so the order of the contacts is not that of Simulation.step, and neither are the results in a crowd, but momentum and
+ * energy are conserved in the same way. Steps are never split into sub-steps.
+ */
+public class StripCoordinator implements Stepper {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 30_000;
+
+    private final Simulation simulation;
+    private final int stripCount;
+    private final Process[] processes;
+    private final StripChannel[] workers;
+    private int[] stripOfBall = new int[0];
+    private long spawnedGeneration = -1;
+    private double spawnedWidth;
+    private double spawnedHeight;
+    private boolean isFailed;
+    private volatile boolean isShutdown;
+
+    /**
+     * Starts the workers and waits until all of them have connected to the coordinator and to their neighbours.
+     *
+     * @param simulation is the simulation to step
+     * @param stripCount is the number of strips, and so the number of worker processes
+     * @throws IOException if a worker cannot be started or does not connect in time
+     */
+    public StripCoordinator(Simulation simulation, int stripCount) throws IOException {
+        this.simulation = simulation;
+        this.stripCount = stripCount;
+        this.processes = new Process[stripCount];
+        this.workers = new StripChannel[stripCount];
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            ServerSocket socket = server.socket();
+            socket.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            for (int strip = 0; strip < stripCount; strip++) {
+                processes[strip] = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        StripWorker.class.getName(), String.valueOf(socket.getLocalPort())).inheritIO().start();
+            }
+            int[] ports = new int[stripCount];
+            for (int strip = 0; strip < stripCount; strip++) {
+                workers[strip] = new StripChannel(socket.accept().getChannel());
+                ports[strip] = workers[strip].receive(StripChannel.HELLO).getInt();
+            }
+            for (int strip = 0; strip < stripCount; strip++) {
+                ByteBuffer setup = workers[strip].begin(StripChannel.SETUP, 3 * Integer.BYTES);
+                setup.putInt(strip).putInt(stripCount).putInt(strip + 1 < stripCount ? ports[strip + 1] : -1);
+                workers[strip].send();
+            }
+        } catch (IOException e) {
+            stopWorkers();
+            throw e;
+        }
+    }
+
+    /**
+     * Advances the simulation by the given amount of time and returns once every worker has sent back its balls.
+     */
+    public void step(double seconds) {
+        if (isShutdown) {
+            throw new IllegalStateException("The stepper has been shut down");
+        }
+        double width = simulation.getWidth();
+        double height = simulation.getHeight();
+        BallStore store = simulation.getStore();
+        double margin = 2 * (store.maxRadius() + store.maxSpeed() * CollisionHandler.sweepSeconds(seconds));
+        if (isFailed || width <= 0 || height <= 0 || width / stripCount < 2 * margin) {
+            spawnedGeneration = -1;
+            simulation.step(seconds);
+            return;
+        }
+        StepEvent event = new StepEvent();
+        event.begin();
+        simulation.prepareStep();
+        width = simulation.getStepWidth();
+        height = simulation.getStepHeight();
+        ChangeBuffer changes = simulation.getChanges();
+        long contactsStart = System.nanoTime();
+        try {
+            if (store.getGeneration() != spawnedGeneration || width != spawnedWidth || height != spawnedHeight) {
+                spawn(store, width);
+                spawnedGeneration = store.getGeneration();
+                spawnedWidth = width;
+                spawnedHeight = height;
+            }
+            for (StripChannel worker : workers) {
+                ByteBuffer message = worker.begin(StripChannel.STEP, 4 * Double.BYTES + 2 * Integer.BYTES);
+                message.putDouble(seconds).putDouble(width).putDouble(height).putDouble(margin)
+                        .putInt(CollisionHandler.getBroadPhaseType().ordinal())
+                        .putInt(CollisionHandler.isContinuous() ? 1 : 0);
+                worker.send();
+            }
+            long contacts = 0;
+            long wallHits = 0;
+            int candidates = 0;
+            for (StripChannel worker : workers) {
+                ByteBuffer message = worker.receive(StripChannel.RESULT);
+                contacts += message.getLong();
+                wallHits += message.getLong();
+                candidates += message.getInt();
+                int count = message.getInt();
+                for (int ball = 0; ball < count; ball++) {
+                    StripChannel.readBallInto(message, store, changes);
+                }
+            }
+            FrameTimings.record(FrameTimings.Phase.CONTACTS, System.nanoTime() - contactsStart);
+            BroadPhaseStats stats = new BroadPhaseStats(candidates, contacts, 0, 0);
+            CollisionHandler.recordStats(stats);
+            event.end();
+            simulation.commitStepEvents(event, stats, wallHits, 1);
+        } catch (IOException e) {
+            e.printStackTrace();
+            isFailed = true;
+            stopWorkers();
+            simulation.step(seconds);
+        }
+    }
+
+    /**
+     * Sends every worker the balls whose centers lie in its strip, replacing the balls it held. Balls outside the
+     * world are given to the first or last strip.
+     */
+    private void spawn(BallStore store, double width) throws IOException {
+        double stripWidth = width / stripCount;
+        if (stripOfBall.length < store.size()) {
+            stripOfBall = new int[store.size()];
+        }
+        int[] counts = new int[stripCount];
+        for (int ball = 0; ball < store.size(); ball++) {
+            int strip = (int) Math.max(0, Math.min(stripCount - 1, Math.floor(store.getX(ball) / stripWidth)));
+            stripOfBall[ball] = strip;
+            counts[strip]++;
+        }
+        for (int strip = 0; strip < stripCount; strip++) {
+            ByteBuffer message = workers[strip].begin(StripChannel.SPAWN, Integer.BYTES + (long) counts[strip] * StripChannel.BALL_BYTES);
+            message.putInt(counts[strip]);
+            for (int ball = 0; ball < store.size(); ball++) {
+                if (stripOfBall[ball] == strip) {
+                    StripChannel.putBall(message, store, ball, ball);
+                }
+            }
+            workers[strip].send();
+        }
+    }
+
+    /**
+     * Tells the workers to exit and waits briefly for them to do so.
+     */
+    public void shutdown() {
+        if (!isShutdown) {
+            isShutdown = true;
+            stopWorkers();
+        }
+    }
+
+    /**
+     * Asks every worker still connected to exit, closes the sockets and kills any worker that has not exited after a
+     * second. Workers that have been stopped are forgotten, so this can safely be called again.
+     */
+    private void stopWorkers() {
+        for (int strip = 0; strip < stripCount; strip++) {
+            StripChannel worker = workers[strip];
+            workers[strip] = null;
+            if (worker != null) {
+                try (worker) {
+                    worker.send(StripChannel.SHUTDOWN);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        for (int strip = 0; strip < stripCount; strip++) {
+            Process process = processes[strip];
+            processes[strip] = null;
+            if (process != null) {
+                try {
+                    if (!process.waitFor(1, TimeUnit.SECONDS)) {
+                        process.destroyForcibly();
+                    }
+                } catch (InterruptedException e) {
+                    process.destroyForcibly();
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    public int getStripCount() {
+        return stripCount;
+    }
+
+    /**
+     * Tells whether the last step was taken by the workers rather than by the coordinator itself, which it falls back
+     * to when the strips are too narrow for the balls or a worker has failed.
+     */
+    boolean wasLastStepDistributed() {
+        return !isFailed && spawnedGeneration >= 0;
+    }
+}
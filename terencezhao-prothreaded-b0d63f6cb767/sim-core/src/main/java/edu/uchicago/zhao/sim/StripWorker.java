@@ -0,0 +1,331 @@
+package edu.uchicago.zhao.sim;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+/**
+ * The StripWorker simulates one vertical strip of the world in a JVM of its own, as one of the processes started by a
+ * StripCoordinator. The world is split into strips of equal width, and a worker owns the balls whose centers lie in
+ * its strip. It steps them with the same CollisionHandler.wallCollision and ballCollision as every other engine, and
+ * trades balls with the workers of the strips to its left and right over local sockets.
+ * <p>
+ * Every step runs as follows:
+ * <ol>
+ * <li>the worker sends each neighbour a copy of its balls within the ghost margin of their shared edge, and receives
+ * theirs. These ghosts are appended to its store after its own balls,</li>
+ * <li>every ball, ghosts included, bounces off the walls of the world,</li>
+ * <li>the broad phase runs over all the balls, and the pairs that touch during the step are collected. Pairs of two
+ * ghosts belong to another strip and are skipped,</li>
+ * <li>the pairs of one ball and one ghost are resolved first, in order of the ids of their balls, and then the pairs
+ * of two of its own balls,</li>
+ * <li>the ghosts are dropped and the balls of the strip are moved along their velocities,</li>
+ * <li>balls that have left the strip are sent to the neighbour on the side they left by, and the balls that neighbours
+ * send are taken in,</li>
+ * <li>the worker reports the state of its balls to the coordinator.</li>
+ * </ol>
+ * A pair that straddles the edge between two strips is seen by both workers, one of them owning each ball. Both hold
+ * the same state for both balls, since the walls do the same to a ghost as to the ball it copies, and both resolve
+ * such pairs before anything else touches their balls and in the same order. They therefore compute exactly the same
+ * collision, and each keeps the result for its own ball, so momentum and energy are conserved across the edge just as
+ * within a strip. This holds as long as no ball is within the ghost margin of both edges of a strip, so a strip must be
+ * at least twice as wide as the margin, which is twice the furthest a ball can reach in a step.
+ * <p>
+ * Workers exchange with their neighbours in pairs, first the even strips with the strips to their right and then with
+ * those to their left, and the left worker of each pair sends before it receives, so no two workers ever wait on each
+ * other. A worker always steps in a single pass and does not split steps into sub-steps.
+ * <p>
+ * The worker is started with the port the coordinator listens on:
+ * <pre>
+ * java -cp sim-core.jar edu.uchicago.zhao.sim.StripWorker PORT
+ * </pre>
+ */
+public class StripWorker {
+
+    private final StripChannel coordinator;
+    private final ServerSocketChannel server;
+    private final BallStore store = new BallStore();
+    private final ChangeBuffer changes = new ChangeBuffer();
+    private final PairList candidatePairs = new PairList();
+    private final PairList crossPairs = new PairList();
+    private final PairList ownPairs = new PairList();
+    private StripChannel left;
+    private StripChannel right;
+    private int stripIndex;
+    private int stripCount;
+    private int[] ids = new int[64];
+    private int[] indexOfId = new int[64];
+    private long[] crossKeys = new long[64];
+    private BroadPhaseType broadPhaseType;
+    private BroadPhase broadPhase;
+    private int ownCount;
+
+    /**
+     * Connects to the coordinator and opens the socket the worker of the strip to the left will connect to.
+     *
+     * @param coordinatorPort is the port the coordinator listens on
+     */
+    public StripWorker(int coordinatorPort) throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        this.server = ServerSocketChannel.open().bind(new InetSocketAddress(loopback, 0));
+        this.coordinator = new StripChannel(SocketChannel.open(new InetSocketAddress(loopback, coordinatorPort)));
+        ByteBuffer hello = coordinator.begin(StripChannel.HELLO, Integer.BYTES);
+        hello.putInt(server.socket().getLocalPort());
+        coordinator.send();
+    }
+
+    public static void main(String[] args) {
+        try {
+            new StripWorker(Integer.parseInt(args[0])).run();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Connects to the neighbours, then handles the messages of the coordinator until it says to shut down.
+     */
+    public void run() throws IOException {
+        ByteBuffer setup = coordinator.receive(StripChannel.SETUP);
+        stripIndex = setup.getInt();
+        stripCount = setup.getInt();
+        int rightPort = setup.getInt();
+        if (rightPort >= 0) {
+            right = new StripChannel(SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), rightPort)));
+        }
+        if (stripIndex > 0) {
+            left = new StripChannel(server.accept());
+        }
+        server.close();
+        try {
+            while (true) {
+                ByteBuffer message = coordinator.receive();
+                int type = coordinator.getReceivedType();
+                if (type == StripChannel.SPAWN) {
+                    spawn(message);
+                } else if (type == StripChannel.STEP) {
+                    step(message.getDouble(), message.getDouble(), message.getDouble(), message.getDouble(),
+                            BroadPhaseType.values()[message.getInt()], message.getInt() != 0);
+                } else {
+                    return;
+                }
+            }
+        } finally {
+            coordinator.close();
+            if (left != null) {
+                left.close();
+            }
+            if (right != null) {
+                right.close();
+            }
+        }
+    }
+
+    /**
+     * Replaces the balls of the strip with those in the message.
+     */
+    private void spawn(ByteBuffer message) {
+        store.clear();
+        int count = message.getInt();
+        for (int ball = 0; ball < count; ball++) {
+            append(StripChannel.addBall(message, store));
+        }
+        ownCount = count;
+    }
+
+    private void step(double seconds, double width, double height, double margin, BroadPhaseType type, boolean isContinuous) throws IOException {
+        double stripWidth = width / stripCount;
+        double stripLeft = stripIndex * stripWidth;
+        double stripRight = stripLeft + stripWidth;
+        double sweepSeconds = isContinuous ? seconds : 0;
+
+        exchange(StripChannel.GHOSTS, stripLeft + margin, stripRight - margin);
+        changes.clear();
+        changes.ensureCapacity(store.size());
+        long wallHits = 0;
+        for (int ball = 0; ball < store.size(); ball++) {
+            if (CollisionHandler.wallCollision(store, ball, changes, width, height, sweepSeconds) && ball < ownCount) {
+                wallHits++;
+            }
+        }
+
+        if (broadPhaseType != type) {
+            broadPhaseType = type;
+            broadPhase = type.create();
+        }
+        candidatePairs.clear();
+        broadPhase.findPairs(store, width, height, sweepSeconds, candidatePairs);
+        crossPairs.clear();
+        ownPairs.clear();
+        for (int pair = 0; pair < candidatePairs.size(); pair++) {
+            int first = candidatePairs.first(pair);
+            int second = candidatePairs.second(pair);
+            boolean isFirstOwn = first < ownCount;
+            boolean isSecondOwn = second < ownCount;
+            if ((isFirstOwn || isSecondOwn) && CollisionHandler.mayTouch(store, first, second, sweepSeconds)) {
+                (isFirstOwn && isSecondOwn ? ownPairs : crossPairs).add(first, second);
+            }
+        }
+        long contacts = resolveCrossPairs(sweepSeconds);
+        for (int pair = 0; pair < ownPairs.size(); pair++) {
+            if (CollisionHandler.ballCollision(store, ownPairs.first(pair), ownPairs.second(pair), changes, sweepSeconds)) {
+                contacts++;
+            }
+        }
+
+        store.truncate(ownCount);
+        store.advance(seconds);
+        migrate(stripLeft, stripRight);
+        report(contacts, wallHits, candidatePairs.size());
+    }
+
+    /**
+     * Resolves the pairs of one ball of the strip and one ghost in the order of the ids of their balls, lowest first,
+     * with the ball of lower id always taken as the first ball, so that the neighbour holding the other ball resolves
+     * them in exactly the same way.
+     *
+     * @return the number of those pairs that collided and whose ball of lower id belongs to this strip, so that every
+     * contact across an edge is counted by one of the two workers
+     */
+    private long resolveCrossPairs(double sweepSeconds) {
+        int count = crossPairs.size();
+        if (crossKeys.length < count) {
+            crossKeys = new long[Math.max(count, crossKeys.length * 2)];
+        }
+        int maxId = 0;
+        for (int ball = 0; ball < store.size(); ball++) {
+            maxId = Math.max(maxId, ids[ball]);
+        }
+        if (indexOfId.length <= maxId) {
+            indexOfId = new int[Math.max(maxId + 1, indexOfId.length * 2)];
+        }
+        for (int ball = 0; ball < store.size(); ball++) {
+            indexOfId[ids[ball]] = ball;
+        }
+        for (int pair = 0; pair < count; pair++) {
+            int firstId = ids[crossPairs.first(pair)];
+            int secondId = ids[crossPairs.second(pair)];
+            crossKeys[pair] = ((long) Math.min(firstId, secondId) << 32) | Math.max(firstId, secondId);
+        }
+        Arrays.sort(crossKeys, 0, count);
+        long contacts = 0;
+        for (int pair = 0; pair < count; pair++) {
+            int lower = indexOfId[(int) (crossKeys[pair] >>> 32)];
+            int higher = indexOfId[(int) crossKeys[pair]];
+            if (CollisionHandler.ballCollision(store, lower, higher, changes, sweepSeconds) && lower < ownCount) {
+                contacts++;
+            }
+        }
+        return contacts;
+    }
+
+    /**
+     * Hands the balls that left the strip to the neighbours and takes in the balls they hand over. Balls beyond the
+     * first or last strip stay where they are, since the walls bring them back.
+     */
+    private void migrate(double stripLeft, double stripRight) throws IOException {
+        exchange(StripChannel.MIGRANTS, stripIndex > 0 ? stripLeft : Double.NEGATIVE_INFINITY,
+                stripIndex < stripCount - 1 ? stripRight : Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Trades balls with both neighbours, the left one being sent the balls left of leftEdge and the right one those at
+     * or right of rightEdge. Ghosts are copies, so the balls sent stay in the strip. Migrants are moved, so the balls
+     * sent are removed from the strip, and the balls received become balls of the strip.
+     */
+    private void exchange(int type, double leftEdge, double rightEdge) throws IOException {
+        if (stripIndex % 2 == 0) {
+            trade(right, type, rightEdge, false);
+            trade(left, type, leftEdge, true);
+        } else {
+            trade(left, type, leftEdge, true);
+            trade(right, type, rightEdge, false);
+        }
+        if (type == StripChannel.MIGRANTS) {
+            int kept = 0;
+            for (int ball = 0; ball < ownCount; ball++) {
+                double x = store.getX(ball);
+                if (x >= leftEdge && x < rightEdge) {
+                    store.move(ball, kept);
+                    ids[kept++] = ids[ball];
+                }
+            }
+            for (int ball = ownCount; ball < store.size(); ball++) {
+                store.move(ball, kept);
+                ids[kept++] = ids[ball];
+            }
+            store.truncate(kept);
+            ownCount = kept;
+        }
+    }
+
+    /**
+     * Sends one neighbour the balls of the strip on its side of the given edge and appends the balls it sends back.
+     * The worker on the left of the pair sends first.
+     */
+    private void trade(StripChannel neighbour, int type, double edge, boolean isLeftNeighbour) throws IOException {
+        if (neighbour == null) {
+            return;
+        }
+        if (isLeftNeighbour) {
+            receiveFrom(neighbour, type);
+            sendTo(neighbour, type, edge, true);
+        } else {
+            sendTo(neighbour, type, edge, false);
+            receiveFrom(neighbour, type);
+        }
+    }
+
+    private void sendTo(StripChannel neighbour, int type, double edge, boolean isLeftNeighbour) throws IOException {
+        ByteBuffer message = neighbour.begin(type, Integer.BYTES + (long) ownCount * StripChannel.BALL_BYTES);
+        int countPosition = message.position();
+        message.putInt(0);
+        int count = 0;
+        for (int ball = 0; ball < ownCount; ball++) {
+            double x = store.getX(ball);
+            if (isLeftNeighbour ? x < edge : x >= edge) {
+                StripChannel.putBall(message, store, ball, ids[ball]);
+                count++;
+            }
+        }
+        message.putInt(countPosition, count);
+        neighbour.send();
+    }
+
+    private void receiveFrom(StripChannel neighbour, int type) throws IOException {
+        ByteBuffer message = neighbour.receive(type);
+        int count = message.getInt();
+        for (int ball = 0; ball < count; ball++) {
+            append(StripChannel.addBall(message, store));
+        }
+    }
+
+    /**
+     * Notes the id of the ball just appended to the store.
+     */
+    private void append(int id) {
+        int ball = store.size() - 1;
+        if (ids.length <= ball) {
+            ids = Arrays.copyOf(ids, Math.max(ball + 1, ids.length * 2));
+        }
+        ids[ball] = id;
+    }
+
+    /**
+     * Sends the coordinator the statistics of the step and the state of every ball of the strip.
+     */
+    private void report(long contacts, long wallHits, int candidates) throws IOException {
+        ByteBuffer message = coordinator.begin(StripChannel.RESULT,
+                2 * Long.BYTES + 2 * Integer.BYTES + (long) ownCount * StripChannel.BALL_BYTES);
+        message.putLong(contacts).putLong(wallHits).putInt(candidates).putInt(ownCount);
+        for (int ball = 0; ball < ownCount; ball++) {
+            StripChannel.putBall(message, store, ball, ids[ball]);
+        }
+        coordinator.send();
+    }
+}
@@ -0,0 +1,135 @@
+package edu.uchicago.zhao.sim;
+
+import java.util.Arrays;
+
+/**
+ * The SweepAndPrune broad phase finds pairs of balls whose bounding boxes overlap by keeping the balls sorted along
+ * the horizontal axis by the left edge of their bounding box.
+ * Once sorted, a single sweep from left to right only has to compare a ball against the balls that start before its
+ * right edge, and of those only the ones whose bounding boxes also overlap vertically are reported.
+ * <p>
+ * The sorted order is kept between frames. Since balls only move a few pixels from one frame to the next, the order
+ * from the previous frame is almost sorted already and an insertion sort repairs it in close to linear time.
+ * The number of swaps the insertion sort needed is recorded every frame. A high swap count means the frame to frame
+ * coherence has broken down, for example right after every ball has been spawned on the same click point.
+ * <p>
+ * There is no earlier order to repair when the balls are replaced, and starting the insertion sort from the order of
+ * the indices would take time in proportion to the square of the number of balls, several seconds for a hundred
+ * thousand. The first frame after a change therefore sorts the balls from scratch instead, and records no swaps.
+ */
+public class SweepAndPrune implements BroadPhase {
+
+    private int[] order = new int[0];
+    private long[] sortKeys = new long[0];
+    private double[] minX = new double[0];
+    private double[] maxX = new double[0];
+    private double[] minY = new double[0];
+    private double[] maxY = new double[0];
+    private int trackedCount;
+    private long trackedGeneration = -1;
+    private long lastSwapCount;
+
+    /**
+     * Updates the bounding boxes of every ball, grown to its reach within the step, repairs the sorted order and adds
+     * each pair of balls whose bounding boxes overlap to the given pair list. Each unordered pair is added once, with
+     * the lower ball index first.
+     *
+     * @param store       is the store of balls to sweep
+     * @param worldWidth  is the width of the pane the balls bounce in, which the sweep does not need
+     * @param worldHeight is the height of the pane the balls bounce in, which the sweep does not need
+     * @param seconds     is the length of the step, or zero to only find the pairs touching now
+     * @param pairs       is the list the candidate pairs will be appended to
+     */
+    public void findPairs(BallStore store, double worldWidth, double worldHeight, double seconds, PairList pairs) {
+        int ballCount = store.size();
+        boolean isReset = ballCount != trackedCount || store.getGeneration() != trackedGeneration;
+        if (isReset) {
+            reset(ballCount, store.getGeneration());
+        }
+        for (int i = 0; i < ballCount; i++) {
+            double radius = store.getReach(i, seconds);
+            minX[i] = store.getX(i) - radius;
+            maxX[i] = store.getX(i) + radius;
+            minY[i] = store.getY(i) - radius;
+            maxY[i] = store.getY(i) + radius;
+        }
+        if (isReset) {
+            fullSort(ballCount);
+        }
+        long swaps = insertionSort(ballCount);
+        lastSwapCount = isReset ? 0 : swaps;
+
+        for (int a = 0; a < ballCount; a++) {
+            int i = order[a];
+            for (int b = a + 1; b < ballCount && minX[order[b]] <= maxX[i]; b++) {
+                int j = order[b];
+                if (minY[j] <= maxY[i] && minY[i] <= maxY[j]) {
+                    pairs.add(Math.min(i, j), Math.max(i, j));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of swaps the insertion sort needed to repair the sorted order on the last frame
+     */
+    public long getLastSwapCount() {
+        return lastSwapCount;
+    }
+
+    /**
+     * Sorts the order array by the left edge of each ball's bounding box. Every element is shifted left past the
+     * elements that should come after it, so the number of shifts is exactly the number of out of order pairs.
+     *
+     * @return the number of swaps performed
+     */
+    private long insertionSort(int ballCount) {
+        long swaps = 0;
+        for (int a = 1; a < ballCount; a++) {
+            int ball = order[a];
+            double key = minX[ball];
+            int b = a - 1;
+            while (b >= 0 && minX[order[b]] > key) {
+                order[b + 1] = order[b];
+                b--;
+                swaps++;
+            }
+            order[b + 1] = ball;
+        }
+        return swaps;
+    }
+
+    /**
+     * Sorts the order array by the left edge of each ball's bounding box from scratch, in n log n time. Each ball is
+     * packed into a long whose high half holds its left edge as a float, with the bits flipped so that negative edges
+     * compare as ints in the same order as the floats, and whose low half holds its index. The float can put two balls
+     * whose edges are very close in the wrong order, which the insertion sort that follows repairs in a single pass.
+     */
+    private void fullSort(int ballCount) {
+        for (int i = 0; i < ballCount; i++) {
+            int bits = Float.floatToIntBits((float) minX[i]);
+            bits ^= (bits >> 31) & Integer.MAX_VALUE;
+            sortKeys[i] = (long) bits << 32 | i;
+        }
+        Arrays.sort(sortKeys, 0, ballCount);
+        for (int a = 0; a < ballCount; a++) {
+            order[a] = (int) sortKeys[a];
+        }
+    }
+
+    /**
+     * Starts over whenever the balls change, since the indices in the old order no longer describe the same balls.
+     */
+    private void reset(int ballCount, long generation) {
+        if (order.length < ballCount) {
+            order = new int[ballCount];
+            sortKeys = new long[ballCount];
+            minX = new double[ballCount];
+            maxX = new double[ballCount];
+            minY = new double[ballCount];
+            maxY = new double[ballCount];
+        }
+        trackedCount = ballCount;
+        trackedGeneration = generation;
+    }
+}
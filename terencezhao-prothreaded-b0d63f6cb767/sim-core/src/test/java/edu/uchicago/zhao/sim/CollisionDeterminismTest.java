@@ -0,0 +1,97 @@
+package edu.uchicago.zhao.sim;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the parallel collision passes give exactly the same result as the serial step. The touching pairs are
+ * sorted before they are grouped into contact batches, so neither the number of threads nor the way the work is split
+ * between them may change a single bit of the balls' state. Each test steps the same seeded scene once on a single
+ * thread and once in a parallel configuration, and compares every array of the two stores with Arrays.equals.
+ */
+class CollisionDeterminismTest {
+
+    private static final long SEED = 42;
+    private static final int BALL_COUNT = 1000;
+    private static final double WORLD_SIZE = 500;
+    private static final int STEP_COUNT = 30;
+    private static final double STEP_SECONDS = 1.0 / 60;
+
+    @AfterEach
+    void restoreCollisionHandler() {
+        CollisionHandler.setBroadPhaseType(BroadPhaseType.SPATIAL_HASH);
+        CollisionHandler.setParallelism(Runtime.getRuntime().availableProcessors());
+        CollisionHandler.getScheduler().setSplitThreshold(CollisionScheduler.DEFAULT_SPLIT_THRESHOLD);
+    }
+
+    @Test
+    void schedulerMatchesSerialStepForAnyParallelismAndSplitThreshold() {
+        StoreSnapshot expected = runSerially();
+        for (int parallelism : new int[]{2, 4, 8}) {
+            for (int splitThreshold : new int[]{1, 64, CollisionScheduler.DEFAULT_SPLIT_THRESHOLD}) {
+                CollisionHandler.setParallelism(parallelism);
+                CollisionHandler.getScheduler().setSplitThreshold(splitThreshold);
+                Simulation simulation = createScene();
+                for (int step = 0; step < STEP_COUNT; step++) {
+                    simulation.step(STEP_SECONDS);
+                }
+                expected.assertMatches(new StoreSnapshot(simulation.getStore()),
+                        "parallelism " + parallelism + ", split threshold " + splitThreshold);
+            }
+        }
+    }
+
+    @Test
+    void partitionedStepperMatchesSerialStepForAnyThreadCount() {
+        StoreSnapshot expected = runSerially();
+        for (int threadCount : new int[]{1, 3, 8}) {
+            Simulation simulation = createScene();
+            PartitionedStepper stepper = new PartitionedStepper(simulation, threadCount);
+            try {
+                for (int step = 0; step < STEP_COUNT; step++) {
+                    stepper.step(STEP_SECONDS);
+                }
+            } finally {
+                stepper.shutdown();
+            }
+            expected.assertMatches(new StoreSnapshot(simulation.getStore()), threadCount + " threads");
+        }
+    }
+
+    private static StoreSnapshot runSerially() {
+        CollisionHandler.setParallelism(1);
+        CollisionHandler.getScheduler().setSplitThreshold(CollisionScheduler.DEFAULT_SPLIT_THRESHOLD);
+        Simulation simulation = createScene();
+        long contacts = 0;
+        for (int step = 0; step < STEP_COUNT; step++) {
+            simulation.step(STEP_SECONDS);
+            contacts += CollisionHandler.getLastStats().getContacts();
+        }
+        assertTrue(contacts > 0, "the scene should be crowded enough for balls to collide");
+        return new StoreSnapshot(simulation.getStore());
+    }
+
+    /**
+     * Builds a crowded scene of balls of different sizes and masses, drawn from a fixed seed so that every call
+     * returns the same scene.
+     */
+    private static Simulation createScene() {
+        Random random = new Random(SEED);
+        Simulation simulation = new Simulation();
+        simulation.setBounds(WORLD_SIZE, WORLD_SIZE);
+        BallStore store = simulation.getStore();
+        for (int ball = 0; ball < BALL_COUNT; ball++) {
+            double radius = 2 + random.nextDouble() * 6;
+            double x = radius + random.nextDouble() * (WORLD_SIZE - 2 * radius);
+            double y = radius + random.nextDouble() * (WORLD_SIZE - 2 * radius);
+            double xVelocity = (random.nextDouble() - 0.5) * 400;
+            double yVelocity = (random.nextDouble() - 0.5) * 400;
+            store.add(x, y, radius, xVelocity, yVelocity, radius * radius * radius, random.nextInt(8));
+        }
+        return simulation;
+    }
+}
@@ -0,0 +1,74 @@
+package edu.uchicago.zhao.sim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that a restored scene carries on bit for bit as the saved one did. The scene is a crowd of equal balls packed
+ * tightly enough that many of them touch several others at once, where the order the contacts are resolved in shows in
+ * the results. It is stepped, saved and stepped on, then restored into the same simulation and stepped on again, so the
+ * broad phase starts the second run with whatever it kept from the end of the first.
+ */
+class SceneFileTest {
+
+    private static final long SEED = 11;
+    private static final int BALL_COUNT = 1500;
+    private static final double BALL_RADIUS = 6;
+    private static final double WORLD_SIZE = 600;
+    private static final int STEP_COUNT = 60;
+    private static final double STEP_SECONDS = 1.0 / 60;
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void restoreCollisionHandler() {
+        CollisionHandler.setBroadPhaseType(BroadPhaseType.SPATIAL_HASH);
+    }
+
+    @Test
+    void restoredSceneResumesBitForBitWithEveryBroadPhase() throws IOException {
+        for (BroadPhaseType broadPhaseType : BroadPhaseType.values()) {
+            CollisionHandler.setBroadPhaseType(broadPhaseType);
+            Simulation simulation = createScene();
+            step(simulation);
+            Path path = directory.resolve(broadPhaseType + ".scene");
+            SceneFile.save(path, simulation, SEED);
+            step(simulation);
+            StoreSnapshot expected = new StoreSnapshot(simulation.getStore());
+
+            assertEquals(SEED, SceneFile.restore(path, simulation));
+            step(simulation);
+            expected.assertMatches(new StoreSnapshot(simulation.getStore()), broadPhaseType.toString());
+        }
+    }
+
+    private static void step(Simulation simulation) {
+        for (int step = 0; step < STEP_COUNT; step++) {
+            simulation.step(STEP_SECONDS);
+        }
+    }
+
+    private static Simulation createScene() {
+        Random random = new Random(SEED);
+        Simulation simulation = new Simulation();
+        simulation.setBounds(WORLD_SIZE, WORLD_SIZE);
+        BallStore store = simulation.getStore();
+        double mass = BALL_RADIUS * BALL_RADIUS * BALL_RADIUS;
+        for (int ball = 0; ball < BALL_COUNT; ball++) {
+            double x = BALL_RADIUS + random.nextDouble() * (WORLD_SIZE - 2 * BALL_RADIUS);
+            double y = BALL_RADIUS + random.nextDouble() * (WORLD_SIZE - 2 * BALL_RADIUS);
+            double xVelocity = (random.nextDouble() - 0.5) * 100;
+            double yVelocity = (random.nextDouble() - 0.5) * 100;
+            store.add(x, y, BALL_RADIUS, xVelocity, yVelocity, mass, ball % 7);
+        }
+        return simulation;
+    }
+}
@@ -0,0 +1,47 @@
+package edu.uchicago.zhao.sim;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+/**
+ * A copy of the state of a BallStore that stepping can change, taken one array per property, so that the results of
+ * two runs can be compared bit for bit.
+ */
+final class StoreSnapshot {
+
+    private final double[] x;
+    private final double[] y;
+    private final double[] xVelocity;
+    private final double[] yVelocity;
+    private final int[] colorIndex;
+    private final boolean[] blurred;
+
+    StoreSnapshot(BallStore store) {
+        int ballCount = store.size();
+        x = new double[ballCount];
+        y = new double[ballCount];
+        xVelocity = new double[ballCount];
+        yVelocity = new double[ballCount];
+        colorIndex = new int[ballCount];
+        blurred = new boolean[ballCount];
+        for (int ball = 0; ball < ballCount; ball++) {
+            x[ball] = store.getX(ball);
+            y[ball] = store.getY(ball);
+            xVelocity[ball] = store.getXVelocity(ball);
+            yVelocity[ball] = store.getYVelocity(ball);
+            colorIndex[ball] = store.getColorIndex(ball);
+            blurred[ball] = store.isBlurred(ball);
+        }
+    }
+
+    void assertMatches(StoreSnapshot actual, String configuration) {
+        assertTrue(Arrays.equals(x, actual.x), "x differs with " + configuration);
+        assertTrue(Arrays.equals(y, actual.y), "y differs with " + configuration);
+        assertTrue(Arrays.equals(xVelocity, actual.xVelocity), "x velocity differs with " + configuration);
+        assertTrue(Arrays.equals(yVelocity, actual.yVelocity), "y velocity differs with " + configuration);
+        assertArrayEquals(colorIndex, actual.colorIndex, "color differs with " + configuration);
+        assertArrayEquals(blurred, actual.blurred, "blur differs with " + configuration);
+    }
+}
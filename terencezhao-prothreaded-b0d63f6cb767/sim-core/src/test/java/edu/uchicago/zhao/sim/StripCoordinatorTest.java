@@ -0,0 +1,101 @@
+package edu.uchicago.zhao.sim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the StripCoordinator against Simulation.step. Steps are never split into sub-steps by the workers, so the
+ * serial runs are limited to one sub-step as well. In a sparse scene, where no ball touches two others at once, the
+ * order the contacts are resolved in does not matter and the strips must give exactly the same result as a single JVM.
+ * In a crowd the order differs, so there only the kinetic energy is checked, which every engine must conserve.
+ */
+class StripCoordinatorTest {
+
+    private static final long SEED = 5;
+    private static final double WORLD_WIDTH = 1600;
+    private static final double WORLD_HEIGHT = 800;
+    private static final double STEP_SECONDS = 1.0 / 60;
+
+    @Test
+    void stripsMatchSerialStepInSparseScene() throws IOException {
+        int ballCount = 100;
+        int stepCount = 300;
+        Simulation expected = createScene(ballCount, 3, 10);
+        long contacts = 0;
+        for (int step = 0; step < stepCount; step++) {
+            expected.step(STEP_SECONDS);
+            contacts += CollisionHandler.getLastStats().getContacts();
+        }
+        assertTrue(contacts > 0, "the scene should be crowded enough for balls to collide");
+        StoreSnapshot expectedSnapshot = new StoreSnapshot(expected.getStore());
+        for (int stripCount : new int[]{2, 3}) {
+            Simulation actual = createScene(ballCount, 3, 10);
+            StripCoordinator coordinator = new StripCoordinator(actual, stripCount);
+            try {
+                for (int step = 0; step < stepCount; step++) {
+                    coordinator.step(STEP_SECONDS);
+                    assertTrue(coordinator.wasLastStepDistributed(), "step " + step + " was not taken by the workers");
+                }
+            } finally {
+                coordinator.shutdown();
+            }
+            expectedSnapshot.assertMatches(new StoreSnapshot(actual.getStore()), stripCount + " strips");
+        }
+    }
+
+    @Test
+    void stripsConserveEnergyInCrowd() throws IOException {
+        Simulation simulation = createScene(1500, 3, 10);
+        double energyBefore = kineticEnergy(simulation.getStore());
+        StripCoordinator coordinator = new StripCoordinator(simulation, 2);
+        long contacts = 0;
+        try {
+            for (int step = 0; step < 120; step++) {
+                coordinator.step(STEP_SECONDS);
+                assertTrue(coordinator.wasLastStepDistributed(), "step " + step + " was not taken by the workers");
+                contacts += CollisionHandler.getLastStats().getContacts();
+            }
+        } finally {
+            coordinator.shutdown();
+        }
+        assertTrue(contacts > 0, "the scene should be crowded enough for balls to collide");
+        assertEquals(energyBefore, kineticEnergy(simulation.getStore()), energyBefore * 1e-9);
+    }
+
+    /**
+     * Builds a scene of balls spread evenly over the world, with sizes between the given radii and masses in
+     * proportion to their volume, drawn from a fixed seed so that every call returns the same scene.
+     */
+    private static Simulation createScene(int ballCount, double minRadius, double maxRadius) {
+        Random random = new Random(SEED);
+        Simulation simulation = new Simulation();
+        simulation.setBounds(WORLD_WIDTH, WORLD_HEIGHT);
+        simulation.setMaxSubsteps(1);
+        BallStore store = simulation.getStore();
+        for (int ball = 0; ball < ballCount; ball++) {
+            double radius = minRadius + random.nextDouble() * (maxRadius - minRadius);
+            double speed = 50 + random.nextDouble() * 250;
+            double angle = 2 * Math.PI * random.nextDouble();
+            double x = radius + random.nextDouble() * (WORLD_WIDTH - 2 * radius);
+            double y = radius + random.nextDouble() * (WORLD_HEIGHT - 2 * radius);
+            store.add(x, y, radius, speed * Math.cos(angle), speed * Math.sin(angle), radius * radius * radius,
+                    ball % 7);
+        }
+        return simulation;
+    }
+
+    private static double kineticEnergy(BallStore store) {
+        double energy = 0;
+        for (int ball = 0; ball < store.size(); ball++) {
+            double xVelocity = store.getXVelocity(ball);
+            double yVelocity = store.getYVelocity(ball);
+            energy += 0.5 * store.getMass(ball) * (xVelocity * xVelocity + yVelocity * yVelocity);
+        }
+        return energy;
+    }
+}